@@ -0,0 +1,142 @@
+package frc.team3407.vision;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.RotatedRect;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-stage timings of the hatch target vision code over the frames in src/jmh/resources/frames.
+ * Run with {@code ./gradlew jmh}; the gc profiler adds the allocation rate of every stage.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class VisionBenchmark {
+
+    private static final double[][] BANDS = {
+            {49.0, 57.0, 126.0},
+            {20.0, 23.0,  90.0},
+            {66.0,  0.0,  90.0},
+    };
+
+    @Param({"320x180", "640x360", "1280x720"})
+    public String resolution;
+
+    @Param({"0", "1", "3"})
+    public int targets;
+
+    private Mat image;
+    private Mat hls;
+    private GripPipeline gripPipeline;
+    private MultiBandPipeline multiBandPipeline;
+    private HatchTargetRecognizer recognizer;
+    private HatchTargetRecognizer pyramidRecognizer;
+    private HatchTargetRecognizer parallelRecognizer;
+    private List<RotatedRect> rectangles;
+    private List<HatchTarget> hatchTargets;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+
+        File frames = new File(System.getProperty("vision.frames", "src/jmh/resources/frames"));
+        File frame = new File(frames, "frame_" + resolution + "_" + targets + ".png");
+        image = Imgcodecs.imread(frame.getPath());
+        if (image.empty()) {
+            throw new IllegalStateException("Could not read " + frame);
+        }
+
+        hls = new Mat();
+        gripPipeline = new GripPipeline();
+        gripPipeline.setMinHue(BANDS[0][0]);
+        gripPipeline.setMinSaturation(BANDS[0][1]);
+        gripPipeline.setMinLuminance(BANDS[0][2]);
+        multiBandPipeline = new MultiBandPipeline(BANDS);
+        recognizer = new HatchTargetRecognizer();
+        pyramidRecognizer = new HatchTargetRecognizer();
+        pyramidRecognizer.setPyramidLevels(1);
+        parallelRecognizer = new HatchTargetRecognizer();
+        parallelRecognizer.setParallel(true);
+
+        rectangles = new ArrayList<>();
+        recognizer.find(image, (rectangle, band) -> rectangles.add(rectangle));
+        hatchTargets = HatchTargetRecognizer.findHatchTargets(rectangles);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        gripPipeline.release();
+        multiBandPipeline.release();
+        recognizer.release();
+        pyramidRecognizer.release();
+        parallelRecognizer.release();
+        hls.release();
+        image.release();
+    }
+
+    @Benchmark
+    public Mat convertHls() {
+        Imgproc.cvtColor(image, hls, Imgproc.COLOR_BGR2HLS);
+        return hls;
+    }
+
+    @Benchmark
+    public Object gripPipelineSingleBand() {
+        gripPipeline.process(image);
+        return gripPipeline.findContoursOutput();
+    }
+
+    @Benchmark
+    public Object multiBandPipeline() {
+        multiBandPipeline.process(image);
+        return multiBandPipeline.findContoursOutput(0);
+    }
+
+    @Benchmark
+    public List<HatchTarget> find() {
+        return recognizer.find(image, (rectangle, band) -> {});
+    }
+
+    @Benchmark
+    public List<HatchTarget> findPyramid() {
+        return pyramidRecognizer.find(image, (rectangle, band) -> {});
+    }
+
+    @Benchmark
+    public List<HatchTarget> findParallel() {
+        return parallelRecognizer.find(image, (rectangle, band) -> {});
+    }
+
+    @Benchmark
+    public List<HatchTarget> pairing() {
+        return HatchTargetRecognizer.findHatchTargets(rectangles);
+    }
+
+    @Benchmark
+    public List<HatchTarget> removeDuplicates() {
+        return HatchTargetRecognizer.filterSameHatchTargets(hatchTargets);
+    }
+}
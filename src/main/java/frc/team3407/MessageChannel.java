@@ -0,0 +1,354 @@
+package frc.team3407;
+
+import edu.wpi.first.networktables.EntryListenerFlags;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEntry;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import frc.team3407.logging.Level;
+import frc.team3407.logging.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * A reliable, ordered stream of messages between two network tables clients, such as the robot
+ * and a driver station program.
+ *
+ * <p>Each end writes its own raw entry, {@code <name>/data}, and listens to the other end's.
+ * Messages are numbered and every {@link #flush()} packs all messages the other end has not yet
+ * acknowledged into one frame, together with a cumulative acknowledgement of everything received
+ * in order so far. A network tables entry only keeps its latest value, so frames can be replaced
+ * before they are read; because every frame repeats the unacknowledged messages nothing is lost
+ * that way, and messages that arrive after a gap are dropped and counted until the gap is resent.
+ *
+ * <p>Frame layout, big endian: version byte, session int, frame number int, acknowledged session
+ * int, next expected sequence long, first sequence long, message count short, then for every
+ * message its UTF-8 length as a short followed by the bytes. The session changes every time a
+ * channel is created, so a restarted end starts its sequence numbers over. The frame number
+ * counts every frame written; network tables does not pass on a value equal to the current one,
+ * so without it a resend of the same messages and acknowledgement would never arrive.
+ */
+public class MessageChannel {
+
+    private static final Log.Site LOG_GAP = Log.site(Level.WARN, "Message channel {} missed {} messages", 1000);
+    private static final Log.Site LOG_SESSION = Log.site(Level.INFO, "Message channel {} connected to session {}");
+
+    private static final byte VERSION = 2;
+    private static final int HEADER_BYTES = 1 + 4 + 4 + 4 + 8 + 8 + 2;
+    static final int MAX_FRAME_BYTES = 4096;
+    static final int MAX_MESSAGE_BYTES = MAX_FRAME_BYTES - HEADER_BYTES - 2;
+    // Unacknowledged messages are sent again after this long without a new frame
+    static final long RETRANSMIT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long RATE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final String name;
+    private final NetworkTableInstance instance;
+    private final NetworkTable table;
+    private final NetworkTableEntry dataEntry;
+    private final int listenerHandle;
+    private final int session = ThreadLocalRandom.current().nextInt();
+
+    private final ArrayDeque<Outgoing> unacknowledged = new ArrayDeque<>();
+    private final ConcurrentLinkedQueue<String> receivedMessages = new ConcurrentLinkedQueue<>();
+    private long nextSequence = 0;
+    private long acknowledgedSequence = 0;
+    private int frameNumber = 0;
+
+    private int peerSession;
+    private boolean peerKnown = false;
+    private long expectedSequence = 0;
+    private boolean acknowledgementDue = false;
+    private long lastFrameNanos = 0;
+
+    private long sentMessages = 0;
+    private long retransmittedMessages = 0;
+    private long receivedMessageCount = 0;
+    private long duplicateMessages = 0;
+    private long missedMessages = 0;
+    private long gaps = 0;
+    private long windowStart = System.nanoTime();
+    private long windowSent = 0;
+    private long windowReceived = 0;
+    private double sentPerSecond = 0;
+    private double receivedPerSecond = 0;
+
+    /**
+     * Opens this end of a channel in the given table. The other end must be opened with the
+     * names swapped.
+     */
+    public MessageChannel(NetworkTableInstance instance, String tableName, String name, String peerName) {
+        this.name = name;
+        this.instance = instance;
+        table = instance.getTable(tableName);
+        dataEntry = table.getEntry(name + "/data");
+        listenerHandle = table.addEntryListener(peerName + "/data",
+                (changedTable, key, entry, value, flags) -> receive(entry.getRaw(null)),
+                EntryListenerFlags.kImmediate | EntryListenerFlags.kNew | EntryListenerFlags.kUpdate);
+    }
+
+    /**
+     * An end that is not connected to network tables. Frames are taken with
+     * {@link #nextFrame(long)} and handed to the other end's {@link #receive(byte[])}.
+     */
+    MessageChannel(String name) {
+        this.name = name;
+        instance = null;
+        table = null;
+        dataEntry = null;
+        listenerHandle = 0;
+    }
+
+    /**
+     * Queues a message to go out with the next flush.
+     */
+    public synchronized void send(String message) {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_MESSAGE_BYTES) {
+            throw new IllegalArgumentException("Message longer than " + MAX_MESSAGE_BYTES + " bytes");
+        }
+        unacknowledged.add(new Outgoing(nextSequence++, bytes));
+    }
+
+    /**
+     * Writes a frame with the queued and unacknowledged messages and the acknowledgement, if
+     * there is anything new or it is time to send the unacknowledged messages again. Call it
+     * once per robot loop.
+     */
+    public void flush() {
+        byte[] frame = nextFrame(System.nanoTime());
+        if (frame != null) {
+            dataEntry.setRaw(frame);
+            instance.flush();
+        }
+    }
+
+    /**
+     * Builds the frame that a flush at the given {@code System.nanoTime()} writes, or returns
+     * null if there is nothing to write. The messages in it count as sent.
+     */
+    synchronized byte[] nextFrame(long now) {
+        updateRates(now);
+
+        boolean hasNew = false;
+        for (Outgoing outgoing : unacknowledged) {
+            if (!outgoing.sent) {
+                hasNew = true;
+                break;
+            }
+        }
+        boolean retransmit = !unacknowledged.isEmpty() && ((now - lastFrameNanos) >= RETRANSMIT_NANOS);
+        if (!hasNew && !retransmit && !acknowledgementDue) {
+            return null;
+        }
+
+        int frameBytes = HEADER_BYTES;
+        int count = 0;
+        for (Outgoing outgoing : unacknowledged) {
+            int messageBytes = 2 + outgoing.bytes.length;
+            if ((frameBytes + messageBytes) > MAX_FRAME_BYTES) {
+                break;
+            }
+            frameBytes += messageBytes;
+            count++;
+        }
+
+        ByteBuffer frame = ByteBuffer.allocate(frameBytes);
+        frame.put(VERSION);
+        frame.putInt(session);
+        frame.putInt(frameNumber++);
+        frame.putInt(peerSession);
+        frame.putLong(expectedSequence);
+        frame.putLong(unacknowledged.isEmpty() ? nextSequence : unacknowledged.peek().sequence);
+        frame.putShort((short) count);
+        Iterator<Outgoing> iterator = unacknowledged.iterator();
+        for (int i = 0; i < count; i++) {
+            Outgoing outgoing = iterator.next();
+            frame.putShort((short) outgoing.bytes.length);
+            frame.put(outgoing.bytes);
+            if (outgoing.sent) {
+                retransmittedMessages++;
+            } else {
+                outgoing.sent = true;
+                sentMessages++;
+                windowSent++;
+            }
+        }
+
+        lastFrameNanos = now;
+        acknowledgementDue = false;
+        return frame.array();
+    }
+
+    /**
+     * Hands every message received in order since the last call to the consumer and returns how
+     * many there were. Never blocks.
+     */
+    public int drain(Consumer<String> consumer) {
+        int drained = 0;
+        String message;
+        while ((message = receivedMessages.poll()) != null) {
+            consumer.accept(message);
+            drained++;
+        }
+        return drained;
+    }
+
+    public void close() {
+        if (table != null) {
+            table.removeEntryListener(listenerHandle);
+        }
+    }
+
+    public synchronized long getSentMessages() {
+        return sentMessages;
+    }
+
+    public synchronized long getRetransmittedMessages() {
+        return retransmittedMessages;
+    }
+
+    public synchronized long getReceivedMessages() {
+        return receivedMessageCount;
+    }
+
+    /**
+     * Messages received again after they had already been delivered.
+     */
+    public synchronized long getDuplicateMessages() {
+        return duplicateMessages;
+    }
+
+    /**
+     * Frames that started after a gap in the sequence, and how many messages the gaps held.
+     * Missed messages are sent again, so these show loss and reordering on the way rather than
+     * messages that never arrive.
+     */
+    public synchronized long getGaps() {
+        return gaps;
+    }
+
+    public synchronized long getMissedMessages() {
+        return missedMessages;
+    }
+
+    public synchronized int getUnacknowledgedMessages() {
+        return unacknowledged.size();
+    }
+
+    public synchronized double getSentPerSecond() {
+        return sentPerSecond;
+    }
+
+    public synchronized double getReceivedPerSecond() {
+        return receivedPerSecond;
+    }
+
+    /**
+     * Reads a frame written by the other end.
+     */
+    synchronized void receive(byte[] raw) {
+        if ((raw == null) || (raw.length < HEADER_BYTES)) {
+            return;
+        }
+        ByteBuffer frame = ByteBuffer.wrap(raw);
+        if (frame.get() != VERSION) {
+            return;
+        }
+        int frameSession = frame.getInt();
+        // Only there to make every frame differ from the previous one
+        frame.getInt();
+        int acknowledgedSession = frame.getInt();
+        long acknowledged = frame.getLong();
+        long firstSequence = frame.getLong();
+        int count = frame.getShort() & 0xffff;
+
+        if (!peerKnown || (frameSession != peerSession)) {
+            // A new or restarted peer numbers its messages from zero and expects ours to as well
+            if (peerKnown) {
+                restartSequence();
+            }
+            peerKnown = true;
+            peerSession = frameSession;
+            expectedSequence = 0;
+            LOG_SESSION.log(name, frameSession);
+        }
+        if (acknowledgedSession == session) {
+            acknowledge(acknowledged);
+        }
+
+        if ((count > 0) && (firstSequence > expectedSequence)) {
+            gaps++;
+            missedMessages += firstSequence - expectedSequence;
+            LOG_GAP.log(name, firstSequence - expectedSequence);
+            // Wait for the missing messages to be sent again, so delivery stays in order
+            acknowledgementDue = true;
+            return;
+        }
+
+        for (int i = 0; i < count; i++) {
+            int length = frame.getShort() & 0xffff;
+            if (length > frame.remaining()) {
+                return;
+            }
+            long sequence = firstSequence + i;
+            if (sequence < expectedSequence) {
+                frame.position(frame.position() + length);
+                duplicateMessages++;
+                continue;
+            }
+            receivedMessages.offer(new String(raw, frame.position(), length, StandardCharsets.UTF_8));
+            frame.position(frame.position() + length);
+            expectedSequence++;
+            receivedMessageCount++;
+            windowReceived++;
+            acknowledgementDue = true;
+        }
+    }
+
+    private void acknowledge(long acknowledged) {
+        if (acknowledged <= acknowledgedSequence) {
+            return;
+        }
+        acknowledgedSequence = acknowledged;
+        while (!unacknowledged.isEmpty() && (unacknowledged.peek().sequence < acknowledged)) {
+            unacknowledged.poll();
+        }
+    }
+
+    private void restartSequence() {
+        nextSequence = 0;
+        acknowledgedSequence = 0;
+        for (Outgoing outgoing : unacknowledged) {
+            outgoing.sequence = nextSequence++;
+            outgoing.sent = false;
+        }
+    }
+
+    private void updateRates(long now) {
+        long elapsed = now - windowStart;
+        if (elapsed >= RATE_WINDOW_NANOS) {
+            sentPerSecond = windowSent * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+            receivedPerSecond = windowReceived * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+            windowSent = 0;
+            windowReceived = 0;
+            windowStart = now;
+        }
+    }
+
+    private static class Outgoing {
+        private long sequence;
+        private final byte[] bytes;
+        private boolean sent = false;
+
+        private Outgoing(long sequence, byte[] bytes) {
+            this.sequence = sequence;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -1,13 +1,35 @@
 package frc.team3407;
 
+import edu.wpi.first.networktables.EntryListenerFlags;
 import edu.wpi.first.networktables.NetworkTable;
 import edu.wpi.first.networktables.NetworkTableEntry;
 import edu.wpi.first.networktables.NetworkTableInstance;
+import frc.team3407.logging.Level;
+import frc.team3407.logging.Log;
 
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Receives messages addressed to the roboRIO through a network table and acknowledges them.
+ *
+ * <p>Messages can be polled with {@link #pollInterval(long)} or, after {@link #startListening()},
+ * pushed by a network tables listener as soon as they arrive. The listener acknowledges each
+ * message and queues it, and the robot loop takes the queued messages with
+ * {@link #drain(Consumer)}, which costs a single empty check when nothing has arrived.
+ *
+ * <p>Both carry one message at a time. For bursts of telemetry or commands open a
+ * {@link MessageChannel} with {@link #openChannel(String)}, which numbers, batches and resends
+ * messages.
+ */
 public class MessageServer {
 
     private static final String ROBORIO = "RoboRio";
 
+    private static final Log.Site LOG_PROCESSING = Log.site(Level.DEBUG, "Processing message: receiver={}");
+    private static final Log.Site LOG_MESSAGE = Log.site(Level.INFO, "{} messages, current mesage from {}: {}");
+
+    private final String tableName;
     private NetworkTable table;
     private NetworkTableEntry processCountEntry;
     private NetworkTableEntry messageCountEntry;
@@ -22,7 +44,11 @@ public class MessageServer {
     private String message;
     private String sender;
 
+    private final ConcurrentLinkedQueue<Message> receivedMessages = new ConcurrentLinkedQueue<>();
+    private int listenerHandle = 0;
+
     public MessageServer(String tableName) {
+        this.tableName = tableName;
         NetworkTableInstance root = NetworkTableInstance.getDefault();
         table = root.getTable(tableName);
 
@@ -47,19 +73,99 @@ public class MessageServer {
     public void processMessages() {
         processCount++;
         processCountEntry.setNumber(processCount);
+        receiveMessage();
+    }
+
+    /**
+     * Receives messages as the receiver entry changes instead of polling. Only changes made by
+     * others are seen, so the acknowledgement written back does not trigger the listener again.
+     */
+    public synchronized void startListening() {
+        if (listenerHandle != 0) {
+            return;
+        }
+        listenerHandle = table.addEntryListener("receiver", (changedTable, key, entry, value, flags) -> {
+            Message received = receiveMessage();
+            if (received != null) {
+                receivedMessages.offer(received);
+            }
+        }, EntryListenerFlags.kNew | EntryListenerFlags.kUpdate);
+    }
 
+    public synchronized void stopListening() {
+        if (listenerHandle != 0) {
+            table.removeEntryListener(listenerHandle);
+            listenerHandle = 0;
+        }
+    }
+
+    /**
+     * Hands every message received by the listener since the last call to the consumer, oldest
+     * first, and returns how many there were. Never blocks.
+     */
+    public int drain(Consumer<Message> consumer) {
+        int drained = 0;
+        Message received;
+        while ((received = receivedMessages.poll()) != null) {
+            consumer.accept(received);
+            drained++;
+        }
+        return drained;
+    }
+
+    /**
+     * Opens the roboRIO end of a sequenced channel to the given peer in this server's table.
+     */
+    public MessageChannel openChannel(String peerName) {
+        return new MessageChannel(NetworkTableInstance.getDefault(), tableName, ROBORIO, peerName);
+    }
+
+    private synchronized Message receiveMessage() {
         String messageReceiver = messageReceiverEntry.getString("");
-        System.out.println("Processing message: receiver=" + messageReceiver);
-        if (ROBORIO.equals(messageReceiver)) {
-            messageCount++;
-            message = messageEntry.getString("");
-            sender = messageSenderEntry.getString("");
-            System.out.println(String.format("%s messages, current mesage from %s: %s", messageCount, sender, message));
-
-            messageCountEntry.setNumber(messageCount);
-            messageEntry.setString("ACK");
-            messageSenderEntry.setString(ROBORIO);
-            messageReceiverEntry.setString(sender);
+        LOG_PROCESSING.log(messageReceiver);
+        if (!ROBORIO.equals(messageReceiver)) {
+            return null;
+        }
+
+        messageCount++;
+        message = messageEntry.getString("");
+        sender = messageSenderEntry.getString("");
+        LOG_MESSAGE.log(messageCount, sender, message);
+
+        messageCountEntry.setNumber(messageCount);
+        messageEntry.setString("ACK");
+        messageSenderEntry.setString(ROBORIO);
+        messageReceiverEntry.setString(sender);
+        return new Message(sender, message, System.nanoTime());
+    }
+
+    /**
+     * A message received from another network tables client.
+     */
+    public static class Message {
+        private final String sender;
+        private final String text;
+        private final long receivedNanos;
+
+        private Message(String sender, String text, long receivedNanos) {
+            this.sender = sender;
+            this.text = text;
+            this.receivedNanos = receivedNanos;
+        }
+
+        public String getSender() {
+            return sender;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * When the message arrived, on the {@code System.nanoTime()} clock.
+         */
+        public long getReceivedNanos() {
+            return receivedNanos;
         }
     }
 }
@@ -8,6 +8,9 @@
 package frc.team3407;
 
 import edu.wpi.first.wpilibj.Joystick;
+import edu.wpi.first.wpilibj.buttons.JoystickButton;
+import edu.wpi.first.wpilibj.command.InstantCommand;
+import frc.team3407.commands.AlignToHatch;
 
 /**
  * This class is the glue that binds the controls on the physical operator
@@ -44,4 +47,14 @@ public class OI
     // button.whenReleased(new ExampleCommand());
     public Joystick stickL = new Joystick(RobotMap.stickL);
     public Joystick stickR = new Joystick(RobotMap.stickR);
+
+    // Hold to turn toward the hatch target
+    public JoystickButton alignButton = new JoystickButton(stickR, RobotMap.alignButton);
+    // Press to swap which camera gets the faster vision rate
+    public JoystickButton scoringSideButton = new JoystickButton(stickL, RobotMap.scoringSideButton);
+
+    public OI() {
+        alignButton.whileHeld(new AlignToHatch());
+        scoringSideButton.whenPressed(new InstantCommand(() -> Robot.setScoringSide(!Robot.isRearScoringSide())));
+    }
 }
@@ -9,18 +9,29 @@ package frc.team3407;
 
 import edu.wpi.cscore.VideoCamera;
 import edu.wpi.cscore.VideoSource;
+import edu.wpi.first.networktables.NetworkTableInstance;
 import edu.wpi.first.wpilibj.CameraServer;
+import edu.wpi.first.wpilibj.Filesystem;
 import edu.wpi.first.wpilibj.TimedRobot;
 import edu.wpi.first.wpilibj.command.Command;
-import edu.wpi.first.wpilibj.command.CommandGroup;
 import edu.wpi.first.wpilibj.command.Scheduler;
 import edu.wpi.first.wpilibj.smartdashboard.SendableChooser;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
-import frc.team3407.commands.TimedDrive;
+import frc.team3407.commands.AutonomousRoutines;
+import frc.team3407.commands.CalibrateHatchBands;
+import frc.team3407.logging.Level;
+import frc.team3407.logging.Log;
+import frc.team3407.profiling.LoopProfiler;
 import frc.team3407.subsystems.DriveBase;
 import frc.team3407.vision.HatchTargetPipeline;
+import frc.team3407.vision.HatchTargetReader;
+import frc.team3407.vision.HatchTargetSource;
+import frc.team3407.vision.VisionScheduler;
 import javafx.scene.Camera;
 
+import java.io.File;
+import java.util.Map;
+
 /**
  * The VM is configured to automatically run this class, and to call the
  * functions corresponding to each mode, as described in the TimedRobot
@@ -32,13 +43,38 @@ import javafx.scene.Camera;
 public class Robot extends TimedRobot 
 {
 
+    private static final Log.Site LOG_TEST = Log.site(Level.INFO, "Test", 1000);
+
+    // Created before the subsystems and commands, which add their sections to it
+    public static LoopProfiler profiler = new LoopProfiler(kDefaultPeriod);
+
+    private static final int DISABLED_SECTION = profiler.addSection("disabledPeriodic");
+    private static final int AUTONOMOUS_SECTION = profiler.addSection("autonomousPeriodic");
+    private static final int TELEOP_SECTION = profiler.addSection("teleopPeriodic");
+    private static final int TEST_SECTION = profiler.addSection("testPeriodic");
+
     public static OI oi;
 
     public static DriveBase driveBase = new DriveBase();
 
+    // The front camera's hatch target, found in the robot code or read from the coprocessor
+    public static HatchTargetSource hatchTargetSource;
+
     private Command autonomousCommand;
     private SendableChooser<Command> chooser = new SendableChooser<>();
 
+    // Both cameras share the vision workers, the one facing the scoring side runs first and faster
+    private static final double ACTIVE_VISION_FPS = 4;
+    private static final double INACTIVE_VISION_FPS = 2;
+    private static final int ACTIVE_VISION_PRIORITY = 1;
+    private static final int INACTIVE_VISION_PRIORITY = 0;
+
+    private final VisionScheduler visionScheduler = new VisionScheduler();
+    // Only set when the vision runs on the robot
+    private static VisionScheduler.Camera<HatchTargetPipeline> frontVision;
+    private static VisionScheduler.Camera<HatchTargetPipeline> rearVision;
+    private static volatile boolean rearScoringSide = false;
+
     /**
      * This function is run when the robot is first started up and should be
      * used for any initialization code.
@@ -46,18 +82,74 @@ public class Robot extends TimedRobot
     @Override
     public void robotInit() {
         oi = new OI();
-        // chooser.addDefault("Default Auto", new ExampleCommand());
-        // chooser.addObject("My Auto", new MyAutoCommand());
+        if (RobotMap.driveControlRate > 0) {
+            driveBase.startControlLoop(RobotMap.driveControlRate);
+        }
+        // Build every autonomous routine now so autonomousInit only has to pick one
+        AutonomousRoutines autonomousRoutines = new AutonomousRoutines();
+        autonomousRoutines.load(new File(Filesystem.getDeployDirectory(), AutonomousRoutines.DIRECTORY_NAME));
+        String defaultRoutine = autonomousRoutines.getDefaultName();
+        for (Map.Entry<String, Command> routine : autonomousRoutines.getRoutines().entrySet()) {
+            if (routine.getKey().equals(defaultRoutine)) {
+                chooser.setDefaultOption(routine.getKey(), routine.getValue());
+            } else {
+                chooser.addOption(routine.getKey(), routine.getValue());
+            }
+        }
         SmartDashboard.putData("Auto mode", chooser);
-        VideoSource videoSource0 = CameraServer.getInstance().startAutomaticCapture("test0", 0);
-        CameraServer.getInstance().startAutomaticCapture("test1", 1);
+        VideoSource videoSource0 = CameraServer.getInstance().startAutomaticCapture("test0", RobotMap.frontCamera);
+        VideoSource videoSource1 = CameraServer.getInstance().startAutomaticCapture("test1", RobotMap.rearCamera);
         videoSource0.setResolution(640, 360);
+        videoSource1.setResolution(640, 360);
         //testCam.setFPS(28);
 
+        SmartDashboard.putData("Calibrate hatch bands", new CalibrateHatchBands(videoSource0));
+
         //CvSource outputStream = CameraServer.getInstance().putVideo("Targeting", 640, 480);
 
-        HatchTargetPipeline.startVisionThread(videoSource0);
+        if (RobotMap.visionOnCoprocessor) {
+            hatchTargetSource = new HatchTargetReader(NetworkTableInstance.getDefault(), RobotMap.frontVisionTable);
+        } else {
+            frontVision = HatchTargetPipeline.attach(visionScheduler, videoSource0, RobotMap.frontVisionTable,
+                    ACTIVE_VISION_FPS, ACTIVE_VISION_PRIORITY);
+            rearVision = HatchTargetPipeline.attach(visionScheduler, videoSource1, RobotMap.rearVisionTable,
+                    INACTIVE_VISION_FPS, INACTIVE_VISION_PRIORITY);
+            hatchTargetSource = frontVision.getPipeline();
+            setScoringSide(rearScoringSide);
+            visionScheduler.start();
+        }
+    }
+
+    /**
+     * Gives the camera facing the scoring side the higher vision rate and priority, and the
+     * other camera the lower ones.
+     */
+    public static void setScoringSide(boolean rear) {
+        rearScoringSide = rear;
+        SmartDashboard.putBoolean("Rear scoring side", rear);
+        if ((frontVision == null) || (rearVision == null)) {
+            return;
+        }
+        VisionScheduler.Camera<HatchTargetPipeline> active = rear ? rearVision : frontVision;
+        VisionScheduler.Camera<HatchTargetPipeline> inactive = rear ? frontVision : rearVision;
+        active.setTargetRate(ACTIVE_VISION_FPS);
+        active.setPriority(ACTIVE_VISION_PRIORITY);
+        inactive.setTargetRate(INACTIVE_VISION_FPS);
+        inactive.setPriority(INACTIVE_VISION_PRIORITY);
+    }
+
+    public static boolean isRearScoringSide() {
+        return rearScoringSide;
     }
+
+    /**
+     * Ends the profiled loop, after the mode's periodic function.
+     */
+    @Override
+    public void robotPeriodic() {
+        profiler.endLoop();
+    }
+
     /**
      * This function is called once each time the robot enters Disabled mode.
      * You can use it to reset any subsystem information you want to clear when
@@ -66,12 +158,18 @@ public class Robot extends TimedRobot
     @Override
     public void disabledInit() 
     {
-        
+        // Start from zero output when enabled again, rather than ramping down from before
+        driveBase.stopImmediately();
+        // Log the loop profile of the mode that just ended
+        profiler.report();
     }
 
     @Override
     public void disabledPeriodic(){
+        profiler.beginLoop();
+        long start = profiler.start();
         Scheduler.getInstance().run();
+        profiler.stop(DISABLED_SECTION, start);
     }
 
     /**
@@ -88,24 +186,8 @@ public class Robot extends TimedRobot
     @Override
     public void autonomousInit() 
     {
-        //autonomousCommand = chooser.getSelected();
-
-        /*
-         * String autoSelected = SmartDashboard.getString("Auto Selector",
-         * "Default"); switch(autoSelected) { case "My Auto": autonomousCommand
-         * = new MyAutoCommand(); break; case "Default Auto": default:
-         * autonomousCommand = new ExampleCommand(); break; }
-         */
-
-        //replace the following
-        TimedDrive test1 = new TimedDrive(1, .5, 0);
-        TimedDrive test2 = new TimedDrive(1, 0, .5);
-        TimedDrive test3 = new TimedDrive(2, .5, .5);
-        CommandGroup testSeq = new CommandGroup();
-        testSeq.addSequential(test1);
-        testSeq.addSequential(test2);
-        testSeq.addSequential(test3);
-        autonomousCommand = testSeq;
+        // The routines were built in robotInit from the files in deploy/autonomous
+        autonomousCommand = chooser.getSelected();
 
         // schedule the autonomous command (example)
         if (autonomousCommand != null) 
@@ -120,7 +202,10 @@ public class Robot extends TimedRobot
     @Override
     public void autonomousPeriodic() 
     {
+        profiler.beginLoop();
+        long start = profiler.start();
         Scheduler.getInstance().run();
+        profiler.stop(AUTONOMOUS_SECTION, start);
     }
 
     @Override
@@ -142,7 +227,10 @@ public class Robot extends TimedRobot
     @Override
     public void teleopPeriodic() 
     {
+        profiler.beginLoop();
+        long start = profiler.start();
         Scheduler.getInstance().run();
+        profiler.stop(TELEOP_SECTION, start);
     }
 
     /**
@@ -151,7 +239,10 @@ public class Robot extends TimedRobot
     @Override
     public void testPeriodic() 
     {
-        System.out.println("Test");
+        profiler.beginLoop();
+        long start = profiler.start();
+        LOG_TEST.log();
         driveBase.tank(0.4, 0.4);
+        profiler.stop(TEST_SECTION, start);
     }
 }
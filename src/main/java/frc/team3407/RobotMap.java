@@ -30,11 +30,23 @@ public class RobotMap
     public static int leftBack = 1;
     public static int rightFront = 2;
     public static int rightBack = 0;
+    // Rate of the drive control loop in Hz, 0 to set the motors from the commands every robot loop
+    public static double driveControlRate = 0;
 
     //joysticks
     public static int stickL = 0;
     public static int stickR = 1;
+    public static int alignButton = 2;
+    public static int scoringSideButton = 2;
 
     //hatch grabber
     public static int talon = 5;
+
+    //vision cameras, the front camera faces the hatch side
+    public static int frontCamera = 0;
+    public static int rearCamera = 1;
+    public static String frontVisionTable = "Vision_Hatch";
+    public static String rearVisionTable = "Vision_Hatch_Rear";
+    // When true the hatch targets are found by VisionCoprocessor and the robot only reads them
+    public static boolean visionOnCoprocessor = false;
 }
@@ -0,0 +1,157 @@
+package frc.team3407.commands;
+
+import edu.wpi.first.networktables.NetworkTablesJNI;
+import edu.wpi.first.wpilibj.command.Command;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import frc.team3407.Robot;
+import frc.team3407.logging.Level;
+import frc.team3407.logging.Log;
+import frc.team3407.vision.HatchTargetResult;
+import frc.team3407.vision.HatchTargetSource;
+import frc.team3407.vision.LatencyHistogram;
+
+/**
+ * Turns the robot in place until the hatch target is centered in the camera image.
+ *
+ * <p>The steering is a proportional and derivative controller on the offset, normalized to the
+ * half width of the image and projected forward by the age of the frame. The derivative uses
+ * the offset velocity measured by the vision code, since new offsets only arrive a few times a
+ * second. The command finishes once the offset has been within tolerance in a number of new
+ * frames in a row, or when it times out. Counting frames rather than robot loops keeps a single
+ * frame projected forward from passing as settled. While the target is lost, including the
+ * frames where the vision code still holds the last offset, the robot does not turn.
+ *
+ * <p>Every run publishes how long it took to align and the camera to motor latency, the age of
+ * each new result at the moment a motor output based on it is set. The gains can be tuned from
+ * the dashboard.
+ */
+public class AlignToHatch extends Command {
+
+    private static final Log.Site LOG_ALIGNED = Log.site(Level.INFO,
+            "Aligned to hatch in {} s, camera to motor latency p95 {} ms");
+    private static final Log.Site LOG_NOT_ALIGNED = Log.site(Level.INFO, "Hatch alignment stopped after {} s");
+
+    private static final String DASHBOARD_PREFIX = "AlignToHatch/";
+
+    private static final double DEFAULT_P = 0.6;
+    private static final double DEFAULT_D = 0.05;
+    // Less turn than this does not overcome friction
+    private static final double MIN_TURN = 0.12;
+    private static final double MAX_TURN = 0.5;
+    // Fraction of the half width, about 10 pixels at 640 wide
+    private static final double TOLERANCE = 0.03;
+    // New frames in a row within tolerance, 750 ms at 4 frames a second
+    private static final int SETTLE_FRAMES = 3;
+    private static final double TIMEOUT_SECONDS = 3;
+
+    private final HatchTargetSource source;
+    private final LatencyHistogram cameraToMotorLatency = new LatencyHistogram();
+
+    private double proportionalGain;
+    private double derivativeGain;
+    private int framesInTolerance;
+    private long lastCount;
+    private boolean aligned;
+
+    /**
+     * Aligns with the robot's hatch target source.
+     */
+    public AlignToHatch() {
+        this(null);
+    }
+
+    public AlignToHatch(HatchTargetSource source) {
+        super(TIMEOUT_SECONDS);
+        this.source = source;
+        requires(Robot.driveBase);
+        SmartDashboard.setDefaultNumber(DASHBOARD_PREFIX + "kP", DEFAULT_P);
+        SmartDashboard.setDefaultNumber(DASHBOARD_PREFIX + "kD", DEFAULT_D);
+    }
+
+    @Override
+    protected void initialize() {
+        proportionalGain = SmartDashboard.getNumber(DASHBOARD_PREFIX + "kP", DEFAULT_P);
+        derivativeGain = SmartDashboard.getNumber(DASHBOARD_PREFIX + "kD", DEFAULT_D);
+        framesInTolerance = 0;
+        aligned = false;
+        cameraToMotorLatency.reset();
+        HatchTargetSource targetSource = getSource();
+        lastCount = (targetSource == null) ? 0 : targetSource.getResult().getCount();
+    }
+
+    @Override
+    protected void execute() {
+        HatchTargetSource targetSource = getSource();
+        // One result per loop, so the error, its rate and the latency all come from the same frame
+        HatchTargetResult result = (targetSource == null) ? null : targetSource.getResult();
+        // A stale result repeats the offset of the last hit, which may be over a second old
+        if ((result == null) || !result.hasTarget() || (result.getStaleCount() > 0) || (result.getWidth() <= 0)) {
+            framesInTolerance = 0;
+            if (result != null) {
+                lastCount = result.getCount();
+            }
+            Robot.driveBase.stop();
+            return;
+        }
+
+        long now = NetworkTablesJNI.now();
+        double halfWidth = result.getWidth() / 2.0;
+        double error = result.getProjectedOffset(now) / halfWidth;
+        double errorRate = result.getOffsetVelocity() / halfWidth;
+
+        long count = result.getCount();
+        boolean newFrame = count != lastCount;
+        if (newFrame) {
+            // Settling is judged on the offset measured in each frame, not on the projection
+            boolean inTolerance = Math.abs(result.getOffset() / halfWidth) < TOLERANCE;
+            framesInTolerance = inTolerance ? (framesInTolerance + 1) : 0;
+        }
+
+        if (Math.abs(error) < TOLERANCE) {
+            Robot.driveBase.stop();
+        } else {
+            double turn = (proportionalGain * error) + (derivativeGain * errorRate);
+            turn = Math.copySign(Math.min(Math.max(Math.abs(turn), MIN_TURN), MAX_TURN), turn);
+            // A target right of center has a positive offset, so turn right. The limits above are
+            // in output, so the output is not squared again
+            Robot.driveBase.tankLinear(turn, -turn);
+        }
+
+        if (newFrame) {
+            lastCount = count;
+            cameraToMotorLatency.record((long) (result.getAge(now) * 1e9));
+        }
+    }
+
+    @Override
+    protected boolean isFinished() {
+        aligned = framesInTolerance >= SETTLE_FRAMES;
+        return aligned || isTimedOut();
+    }
+
+    @Override
+    protected void end() {
+        Robot.driveBase.stop();
+
+        double seconds = timeSinceInitialized();
+        SmartDashboard.putBoolean(DASHBOARD_PREFIX + "aligned", aligned);
+        SmartDashboard.putNumber(DASHBOARD_PREFIX + "latencyP50", cameraToMotorLatency.getValueAtPercentile(50) / 1e6);
+        SmartDashboard.putNumber(DASHBOARD_PREFIX + "latencyP95", cameraToMotorLatency.getValueAtPercentile(95) / 1e6);
+        SmartDashboard.putNumber(DASHBOARD_PREFIX + "latencyMax", cameraToMotorLatency.getMax() / 1e6);
+        if (aligned) {
+            SmartDashboard.putNumber(DASHBOARD_PREFIX + "timeToAlign", seconds);
+            LOG_ALIGNED.log(seconds, cameraToMotorLatency.getValueAtPercentile(95) / 1e6);
+        } else {
+            LOG_NOT_ALIGNED.log(seconds);
+        }
+    }
+
+    @Override
+    protected void interrupted() {
+        end();
+    }
+
+    private HatchTargetSource getSource() {
+        return (source != null) ? source : Robot.hatchTargetSource;
+    }
+}
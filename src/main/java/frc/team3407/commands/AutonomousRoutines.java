@@ -0,0 +1,271 @@
+package frc.team3407.commands;
+
+import edu.wpi.first.wpilibj.command.Command;
+import edu.wpi.first.wpilibj.command.CommandGroup;
+import edu.wpi.first.wpilibj.command.WaitCommand;
+import frc.team3407.logging.Level;
+import frc.team3407.logging.Log;
+import frc.team3407.motion.MotionProfile;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the autonomous routines from the files in the autonomous deploy directory, once at
+ * start up, so starting autonomous only has to pick one.
+ *
+ * <p>Each file is one routine, named after the file unless it has a {@code name} line. Every
+ * other line is a step, run in order, and lines starting with # are comments:
+ *
+ * <pre>
+ * name Cross the line
+ * default
+ * drive 1.5          # meters on a motion profile, negative to back up
+ * turn 90            # degrees in place, clockwise when positive
+ * timed 1 0.5 0.5    # seconds at constant left and right outputs
+ * wait 0.5           # seconds
+ * align              # turn to the hatch target
+ * </pre>
+ *
+ * <p>The motion profiles are generated while loading and shared by steps with the same
+ * distance or angle, however it is written. A file with an error is skipped and logged with the
+ * line. Files are parsed completely before any command is created.
+ */
+public class AutonomousRoutines {
+
+    public static final String DIRECTORY_NAME = "autonomous";
+
+    private static final Log.Site LOG_LOADED = Log.site(Level.INFO, "Loaded autonomous routine {} with {} steps");
+    private static final Log.Site LOG_FAILED = Log.site(Level.WARN, "Skipped autonomous routine {}: {}");
+    private static final Log.Site LOG_NONE = Log.site(Level.WARN, "No autonomous routines in {}");
+
+    private final Map<String, Command> routines = new LinkedHashMap<>();
+    // By meters and degrees as parsed, so 2 and 2.0 share a profile
+    private final Map<Double, MotionProfile> straightProfiles = new HashMap<>();
+    private final Map<Double, MotionProfile> turnProfiles = new HashMap<>();
+    private final Map<Double, MotionProfile> negatedTurnProfiles = new HashMap<>();
+    private String defaultName;
+
+    /**
+     * Loads every routine in the directory, in file name order.
+     */
+    public void load(File directory) {
+        File[] files = directory.listFiles(File::isFile);
+        if ((files == null) || (files.length == 0)) {
+            LOG_NONE.log(directory);
+            return;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            try {
+                read(file);
+            } catch (IOException | IllegalArgumentException e) {
+                LOG_FAILED.log(file.getName(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * The routines by name, in the order they were loaded.
+     */
+    public Map<String, Command> getRoutines() {
+        return routines;
+    }
+
+    /**
+     * The routine marked default, else the first one loaded, or null when there are none.
+     */
+    public String getDefaultName() {
+        if ((defaultName == null) && !routines.isEmpty()) {
+            return routines.keySet().iterator().next();
+        }
+        return defaultName;
+    }
+
+    private void read(File file) throws IOException {
+        Routine routine = parse(file);
+        if (routines.containsKey(routine.name)) {
+            throw new IllegalArgumentException("another routine is named " + routine.name);
+        }
+        CommandGroup group = new CommandGroup(routine.name);
+        for (Step step : routine.steps) {
+            group.addSequential(step.createCommand());
+        }
+        routines.put(routine.name, group);
+        if (routine.isDefault && (defaultName == null)) {
+            defaultName = routine.name;
+        }
+        LOG_LOADED.log(routine.name, routine.steps.size());
+    }
+
+    /**
+     * Reads the name and the steps of one routine.
+     */
+    Routine parse(File file) throws IOException {
+        String fileName = file.getName();
+        int extension = fileName.lastIndexOf('.');
+        String name = (extension > 0) ? fileName.substring(0, extension) : fileName;
+        boolean isDefault = false;
+        List<Step> steps = new ArrayList<>();
+
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                int comment = line.indexOf('#');
+                if (comment >= 0) {
+                    line = line.substring(0, comment);
+                }
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] words = line.split("\\s+");
+                try {
+                    if (words[0].equals("name")) {
+                        if (!steps.isEmpty()) {
+                            throw new IllegalArgumentException("name must come before the steps");
+                        }
+                        name = line.substring(words[0].length()).trim();
+                    } else if (words[0].equals("default")) {
+                        isDefault = true;
+                    } else {
+                        steps.add(parseStep(words));
+                    }
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("line " + lineNumber + ": " + e.getMessage());
+                }
+            }
+        }
+
+        if (steps.isEmpty()) {
+            throw new IllegalArgumentException("no steps");
+        }
+        return new Routine(name, isDefault, steps);
+    }
+
+    private Step parseStep(String[] words) {
+        switch (words[0]) {
+            case "drive": {
+                checkArguments(words, 1);
+                double meters = parse(words[1]);
+                MotionProfile profile = straightProfiles.computeIfAbsent(meters, DriveProfile::straightProfile);
+                return new Step(words[0], new double[] {meters}, profile, profile);
+            }
+            case "turn": {
+                checkArguments(words, 1);
+                double degrees = parse(words[1]);
+                MotionProfile profile = turnProfiles.computeIfAbsent(degrees, DriveProfile::turnProfile);
+                MotionProfile negated = negatedTurnProfiles.computeIfAbsent(degrees, key -> profile.negate());
+                return new Step(words[0], new double[] {degrees}, profile, negated);
+            }
+            case "timed": {
+                checkArguments(words, 3);
+                return new Step(words[0],
+                        new double[] {parsePositive(words[1]), parseOutput(words[2]), parseOutput(words[3])},
+                        null, null);
+            }
+            case "wait": {
+                checkArguments(words, 1);
+                return new Step(words[0], new double[] {parsePositive(words[1])}, null, null);
+            }
+            case "align": {
+                checkArguments(words, 0);
+                return new Step(words[0], new double[0], null, null);
+            }
+            default:
+                throw new IllegalArgumentException("unknown step " + words[0]);
+        }
+    }
+
+    private static void checkArguments(String[] words, int count) {
+        if (words.length != (count + 1)) {
+            throw new IllegalArgumentException(words[0] + " takes " + count + ((count == 1) ? " value" : " values"));
+        }
+    }
+
+    private static double parse(String value) {
+        try {
+            double number = Double.parseDouble(value);
+            if (Double.isNaN(number) || Double.isInfinite(number)) {
+                throw new NumberFormatException();
+            }
+            return number;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("not a number: " + value);
+        }
+    }
+
+    private static double parsePositive(String value) {
+        double number = parse(value);
+        if (number <= 0) {
+            throw new IllegalArgumentException("must be positive: " + value);
+        }
+        return number;
+    }
+
+    private static double parseOutput(String value) {
+        double number = parse(value);
+        if (Math.abs(number) > 1) {
+            throw new IllegalArgumentException("output must be between -1 and 1: " + value);
+        }
+        return number;
+    }
+
+    /**
+     * A routine as read from its file.
+     */
+    static final class Routine {
+        final String name;
+        final boolean isDefault;
+        final List<Step> steps;
+
+        private Routine(String name, boolean isDefault, List<Step> steps) {
+            this.name = name;
+            this.isDefault = isDefault;
+            this.steps = steps;
+        }
+    }
+
+    /**
+     * One step of a routine: its keyword, the values that follow it and, for moves, the profiles
+     * of the left and right side.
+     */
+    static final class Step {
+        final String type;
+        final double[] values;
+        final MotionProfile left;
+        final MotionProfile right;
+
+        private Step(String type, double[] values, MotionProfile left, MotionProfile right) {
+            this.type = type;
+            this.values = values;
+            this.left = left;
+            this.right = right;
+        }
+
+        private Command createCommand() {
+            switch (type) {
+                case "drive":
+                case "turn":
+                    return new DriveProfile(left, right);
+                case "timed":
+                    return new TimedDrive(values[0], values[1], values[2]);
+                case "wait":
+                    return new WaitCommand(values[0]);
+                default:
+                    return new AlignToHatch();
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package frc.team3407.commands;
+
+import edu.wpi.cscore.CvSink;
+import edu.wpi.cscore.VideoSource;
+import edu.wpi.first.wpilibj.Filesystem;
+import edu.wpi.first.wpilibj.command.Command;
+import frc.team3407.logging.Level;
+import frc.team3407.logging.Log;
+import frc.team3407.vision.BandCalibrator;
+import frc.team3407.vision.HatchBands;
+import org.opencv.core.Mat;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Calibrates the hatch target bands on live frames while the robot is disabled. A target must
+ * be in view of the camera for the first batch of frames. The log then asks for it to be taken
+ * out of view, and after a pause a second batch is captured without it, so bands that pair up
+ * noise can be ruled out.
+ *
+ * <p>Frames are captured and the bands searched on a background thread so the robot loop keeps
+ * running. The bands are written to the deploy directory on the robot and used from the next
+ * start up; copy the file back to src/main/deploy to keep them for the next deploy. Calibration
+ * gives up when the camera fails to deliver several frames in a row, and nothing is written
+ * when the command is cancelled.
+ */
+public class CalibrateHatchBands extends Command {
+
+    private static final Log.Site LOG_START = Log.site(Level.INFO, "Calibrating hatch bands on {} frames with a target from {}");
+    private static final Log.Site LOG_REMOVE = Log.site(Level.WARN, "Take the hatch target out of view of {}, capturing {} frames without it in {} seconds");
+    private static final Log.Site LOG_SAVED = Log.site(Level.INFO, "Saved hatch bands to {}, used after restart");
+    private static final Log.Site LOG_FAILED = Log.site(Level.WARN, "Hatch band calibration failed: {}");
+
+    private static final int FRAME_COUNT = 40;
+    private static final int NEGATIVE_FRAME_COUNT = 20;
+    private static final long REMOVE_TARGET_MILLISECONDS = 5000;
+    private static final long FRAME_INTERVAL_MILLISECONDS = 250;
+    private static final double GRAB_TIMEOUT_SECONDS = 1;
+    private static final int MAX_FAILED_GRABS = 5;
+
+    private final VideoSource videoSource;
+    private Thread thread;
+
+    public CalibrateHatchBands(VideoSource videoSource) {
+        this.videoSource = videoSource;
+        setRunWhenDisabled(true);
+    }
+
+    @Override
+    protected void initialize() {
+        thread = new Thread(this::calibrate, "CalibrateHatchBands");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    @Override
+    protected boolean isFinished() {
+        return !thread.isAlive();
+    }
+
+    @Override
+    protected void interrupted() {
+        thread.interrupt();
+    }
+
+    private void calibrate() {
+        LOG_START.log(FRAME_COUNT, videoSource.getName());
+        BandCalibrator calibrator = new BandCalibrator(BandCalibrator.DEFAULT_TARGET_HIT_RATE);
+        // A sink of its own, closing the shared one from CameraServer would break other users
+        CvSink sink = new CvSink("CalibrateHatchBands_" + videoSource.getName());
+        sink.setSource(videoSource);
+        Mat frame = new Mat();
+        try {
+            if (!capture(sink, frame, calibrator, FRAME_COUNT, true)) {
+                return;
+            }
+            LOG_REMOVE.log(videoSource.getName(), NEGATIVE_FRAME_COUNT, REMOVE_TARGET_MILLISECONDS / 1000);
+            Thread.sleep(REMOVE_TARGET_MILLISECONDS);
+            if (!capture(sink, frame, calibrator, NEGATIVE_FRAME_COUNT, false)) {
+                return;
+            }
+
+            BandCalibrator.Result result = calibrator.calibrate();
+            if (!result.isTargetMet()) {
+                LOG_FAILED.log(result);
+                return;
+            }
+            // Cancelled after the search finished
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException();
+            }
+            File file = new File(Filesystem.getDeployDirectory(), HatchBands.FILE_NAME);
+            HatchBands.write(file, result.getBands(), result.getComments());
+            LOG_SAVED.log(file);
+        } catch (InterruptedException e) {
+            LOG_FAILED.log("cancelled, bands not written");
+        } catch (IOException e) {
+            LOG_FAILED.log(e.getMessage());
+        } finally {
+            sink.close();
+            frame.release();
+            calibrator.release();
+        }
+    }
+
+    /**
+     * Adds frames to the calibrator, all labeled as having a target or all as having none.
+     * Returns false when the camera stops delivering frames.
+     */
+    private boolean capture(CvSink sink, Mat frame, BandCalibrator calibrator, int count, boolean hasTarget)
+            throws InterruptedException {
+        int captured = 0;
+        int failedGrabs = 0;
+        while (captured < count) {
+            if (sink.grabFrame(frame, GRAB_TIMEOUT_SECONDS) != 0) {
+                calibrator.addFrame(frame, hasTarget, Double.NaN);
+                captured++;
+                failedGrabs = 0;
+            } else if (++failedGrabs >= MAX_FAILED_GRABS) {
+                LOG_FAILED.log("no frames from " + videoSource.getName() + ", " + sink.getError());
+                return false;
+            }
+            Thread.sleep(FRAME_INTERVAL_MILLISECONDS);
+        }
+        return true;
+    }
+}
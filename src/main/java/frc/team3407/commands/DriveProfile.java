@@ -0,0 +1,111 @@
+package frc.team3407.commands;
+
+import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj.command.Command;
+import frc.team3407.Robot;
+import frc.team3407.logging.Level;
+import frc.team3407.logging.Log;
+import frc.team3407.motion.MotionProfile;
+
+/**
+ * Plays back precomputed motion profiles for the left and right side of the drive base, in
+ * place of the constant outputs of {@link TimedDrive}.
+ *
+ * <p>The drive base has no encoders, so the outputs are feedforward only: a static term to
+ * overcome friction plus terms proportional to the profile's velocity and acceleration. The
+ * sample is picked by the time since the command started, so a late loop skips ahead rather
+ * than stretching the move. Each loop is a lookup in the profile arrays.
+ *
+ * <p>The feedforward constants are estimates for the kit chassis and should be measured by
+ * driving at a few constant outputs and timing the distance covered.
+ */
+public class DriveProfile extends Command {
+
+    private static final Log.Site LOG_START = Log.site(Level.INFO, "DriveProfile {} m left, {} m right in {} s");
+
+    // Meters per second and per second squared
+    public static final double DEFAULT_MAX_VELOCITY = 2.0;
+    public static final double DEFAULT_MAX_ACCELERATION = 2.5;
+    public static final double DEFAULT_MAX_JERK = 15;
+    // Half the distance between the left and right wheels in meters
+    public static final double HALF_TRACK_WIDTH = 0.28;
+
+    // Output needed to start moving, per meter per second and per meter per second squared
+    private static final double STATIC_OUTPUT = 0.08;
+    private static final double VELOCITY_OUTPUT = 0.28;
+    private static final double ACCELERATION_OUTPUT = 0.04;
+
+    private final MotionProfile left;
+    private final MotionProfile right;
+
+    public DriveProfile(MotionProfile left, MotionProfile right) {
+        this.left = left;
+        this.right = right;
+        requires(Robot.driveBase);
+    }
+
+    /**
+     * Drives straight for the given meters, backwards when negative, on an S-curve profile.
+     */
+    public static DriveProfile straight(double meters) {
+        MotionProfile profile = straightProfile(meters);
+        return new DriveProfile(profile, profile);
+    }
+
+    /**
+     * Turns in place by the given degrees, clockwise when positive.
+     */
+    public static DriveProfile turn(double degrees) {
+        MotionProfile profile = turnProfile(degrees);
+        return new DriveProfile(profile, profile.negate());
+    }
+
+    /**
+     * The profile of both sides for a straight move.
+     */
+    public static MotionProfile straightProfile(double meters) {
+        return MotionProfile.sCurve(meters, DEFAULT_MAX_VELOCITY, DEFAULT_MAX_ACCELERATION, DEFAULT_MAX_JERK,
+                TimedRobot.kDefaultPeriod);
+    }
+
+    /**
+     * The profile of the left side for a turn in place, the right side runs it negated.
+     */
+    public static MotionProfile turnProfile(double degrees) {
+        return MotionProfile.sCurve(Math.toRadians(degrees) * HALF_TRACK_WIDTH, DEFAULT_MAX_VELOCITY,
+                DEFAULT_MAX_ACCELERATION, DEFAULT_MAX_JERK, TimedRobot.kDefaultPeriod);
+    }
+
+    @Override
+    protected void initialize() {
+        LOG_START.log(left.getPosition(left.getLength() - 1), right.getPosition(right.getLength() - 1),
+                Math.max(left.getDuration(), right.getDuration()));
+    }
+
+    @Override
+    protected void execute() {
+        double time = timeSinceInitialized();
+        Robot.driveBase.tankLinear(getOutput(left, time), getOutput(right, time));
+    }
+
+    @Override
+    protected boolean isFinished() {
+        return timeSinceInitialized() >= Math.max(left.getDuration(), right.getDuration());
+    }
+
+    @Override
+    protected void end() {
+        Robot.driveBase.stop();
+    }
+
+    private static double getOutput(MotionProfile profile, double time) {
+        int index = profile.getIndex(time);
+        double velocity = profile.getVelocity(index);
+        if (velocity == 0) {
+            return 0;
+        }
+        double output = (Math.signum(velocity) * STATIC_OUTPUT) + (velocity * VELOCITY_OUTPUT) +
+                (profile.getAcceleration(index) * ACCELERATION_OUTPUT);
+        return Math.max(-1, Math.min(1, output));
+    }
+}
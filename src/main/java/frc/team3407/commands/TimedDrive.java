@@ -1,9 +1,13 @@
 package frc.team3407.commands;
 
 import frc.team3407.Robot;
+import frc.team3407.logging.Level;
+import frc.team3407.logging.Log;
 import edu.wpi.first.wpilibj.command.TimedCommand;
 
 public class TimedDrive extends TimedCommand {
+    private static final Log.Site LOG_START = Log.site(Level.INFO, "TimedDrive left={} right={}");
+
     private double left, right;
 
     public TimedDrive(double timeout, double left, double right) {
@@ -15,7 +19,7 @@ public class TimedDrive extends TimedCommand {
 
     // Called just before this Command runs the first time
     protected void initialize() {
-        System.out.println("TimedDrive left=" + left + " right=" + right);
+        LOG_START.log(left, right);
     }
 
     // Called repeatedly when this Command is scheduled to run
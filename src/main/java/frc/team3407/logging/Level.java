@@ -0,0 +1,9 @@
+package frc.team3407.logging;
+
+public enum Level {
+    DEBUG,
+    INFO,
+    WARN,
+    ERROR,
+    OFF
+}
@@ -0,0 +1,407 @@
+package frc.team3407.logging;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous logging for code that runs every loop or every frame.
+ *
+ * <p>Messages are declared once as {@link Site}s with a level, a template with {@code {}}
+ * placeholders and an optional minimum interval. Logging at a site copies the arguments into a
+ * preallocated slot of a lock-free ring buffer and returns; a low priority thread formats the
+ * messages and writes them to the console, which can block on the roboRIO. Primitive arguments
+ * are stored without boxing, and a site whose level is disabled returns before doing anything.
+ * Strings, boxed primitives, enums and throwables are stored by reference; any other object is
+ * converted with {@link String#valueOf(Object)} when logged, so later changes to it do not show
+ * in the message. A throwable is printed with its stack trace after the message.
+ *
+ * <pre>
+ * private static final Log.Site FOUND = Log.site(Level.DEBUG, "Found {} targets in {} ms");
+ * ...
+ * FOUND.log(targets.size(), duration);
+ * </pre>
+ *
+ * <p>When the ring is full new messages are dropped and counted rather than waiting.
+ */
+public final class Log {
+
+    static final int CAPACITY = 1024;
+    private static final int MASK = CAPACITY - 1;
+    private static final int MAX_ARGS = 3;
+    private static final long DRAIN_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    private static final byte LONG_ARG = 0;
+    private static final byte DOUBLE_ARG = 1;
+    private static final byte OBJECT_ARG = 2;
+
+    private static final Event[] ring = new Event[CAPACITY];
+    private static final AtomicLong tail = new AtomicLong();
+    private static final AtomicLong dropped = new AtomicLong();
+    private static volatile long head = 0;
+    private static volatile int threshold = parseLevel(System.getProperty("log.level")).ordinal();
+    private static volatile PrintStream output = System.out;
+
+    static {
+        for (int i = 0; i < CAPACITY; i++) {
+            ring[i] = new Event();
+        }
+        Thread drainer = new Thread(Log::drain, "LogDrainer");
+        drainer.setDaemon(true);
+        drainer.setPriority(Thread.MIN_PRIORITY);
+        drainer.start();
+    }
+
+    private Log() {
+    }
+
+    /**
+     * The level with the given name in any case, or INFO with a warning when there is no such level.
+     */
+    static Level parseLevel(String name) {
+        if (name == null) {
+            return Level.INFO;
+        }
+        try {
+            return Level.valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.err.println("[WARN] Unknown log.level " + name + ", using INFO");
+            return Level.INFO;
+        }
+    }
+
+    public static Site site(Level level, String template) {
+        return new Site(level, template, 0);
+    }
+
+    /**
+     * A site that logs at most once per interval. The number of messages skipped in between is
+     * added to the next one that is logged.
+     */
+    public static Site site(Level level, String template, long minIntervalMillis) {
+        return new Site(level, template, TimeUnit.MILLISECONDS.toNanos(minIntervalMillis));
+    }
+
+    public static void setLevel(Level level) {
+        threshold = level.ordinal();
+    }
+
+    public static boolean isEnabled(Level level) {
+        return level.ordinal() >= threshold;
+    }
+
+    public static void setOutput(PrintStream printStream) {
+        output = printStream;
+    }
+
+    public static long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Waits up to the given time for the messages logged so far to be written.
+     */
+    public static void flush(long timeoutMillis) {
+        long target = tail.get();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while ((head < target) && (System.nanoTime() < deadline)) {
+            LockSupport.parkNanos(DRAIN_INTERVAL_NANOS / 4);
+        }
+    }
+
+    private static Event claim() {
+        while (true) {
+            long sequence = tail.get();
+            if ((sequence - head) >= CAPACITY) {
+                dropped.incrementAndGet();
+                return null;
+            }
+            if (tail.compareAndSet(sequence, sequence + 1)) {
+                Event event = ring[(int) (sequence & MASK)];
+                event.sequence = sequence;
+                return event;
+            }
+        }
+    }
+
+    private static void drain() {
+        StringBuilder line = new StringBuilder(256);
+        long reportedDropped = 0;
+        while (true) {
+            long next = head;
+            Event event = ring[(int) (next & MASK)];
+            if (event.published != next) {
+                long droppedNow = dropped.get();
+                if (droppedNow != reportedDropped) {
+                    output.println("[WARN] " + (droppedNow - reportedDropped) + " log messages dropped");
+                    reportedDropped = droppedNow;
+                }
+                LockSupport.parkNanos(DRAIN_INTERVAL_NANOS);
+                continue;
+            }
+
+            line.setLength(0);
+            Throwable thrown = null;
+            try {
+                thrown = event.format(line);
+            } catch (RuntimeException e) {
+                line.append(" <format failed: ").append(e).append('>');
+            } finally {
+                event.clear();
+            }
+            output.println(line);
+            if (thrown != null) {
+                thrown.printStackTrace(output);
+            }
+            // Only after the write, so flush waits until the message is out
+            head = next + 1;
+        }
+    }
+
+    /**
+     * A place in the code that logs one kind of message.
+     */
+    public static final class Site {
+        private final Level level;
+        private final String[] segments;
+        private final long minIntervalNanos;
+        private final AtomicLong nextAllowed = new AtomicLong(Long.MIN_VALUE);
+        private final AtomicInteger suppressed = new AtomicInteger();
+
+        private Site(Level level, String template, long minIntervalNanos) {
+            this.level = level;
+            this.segments = split(template);
+            this.minIntervalNanos = minIntervalNanos;
+            if ((segments.length - 1) > MAX_ARGS) {
+                throw new IllegalArgumentException("At most " + MAX_ARGS + " arguments: " + template);
+            }
+        }
+
+        public boolean isEnabled() {
+            return level.ordinal() >= threshold;
+        }
+
+        public void log() {
+            Event event = start();
+            if (event != null) {
+                event.publish();
+            }
+        }
+
+        public void log(long arg) {
+            Event event = start();
+            if (event != null) {
+                event.add(arg);
+                event.publish();
+            }
+        }
+
+        public void log(double arg) {
+            Event event = start();
+            if (event != null) {
+                event.add(arg);
+                event.publish();
+            }
+        }
+
+        public void log(Object arg) {
+            Event event = start();
+            if (event != null) {
+                try {
+                    event.add(arg);
+                } finally {
+                    event.publish();
+                }
+            }
+        }
+
+        public void log(long arg1, long arg2) {
+            Event event = start();
+            if (event != null) {
+                event.add(arg1);
+                event.add(arg2);
+                event.publish();
+            }
+        }
+
+        public void log(long arg1, double arg2) {
+            Event event = start();
+            if (event != null) {
+                event.add(arg1);
+                event.add(arg2);
+                event.publish();
+            }
+        }
+
+        public void log(double arg1, double arg2) {
+            Event event = start();
+            if (event != null) {
+                event.add(arg1);
+                event.add(arg2);
+                event.publish();
+            }
+        }
+
+        public void log(Object arg1, Object arg2) {
+            Event event = start();
+            if (event != null) {
+                try {
+                    event.add(arg1);
+                    event.add(arg2);
+                } finally {
+                    event.publish();
+                }
+            }
+        }
+
+        public void log(Object arg1, Object arg2, Object arg3) {
+            Event event = start();
+            if (event != null) {
+                try {
+                    event.add(arg1);
+                    event.add(arg2);
+                    event.add(arg3);
+                } finally {
+                    event.publish();
+                }
+            }
+        }
+
+        private Event start() {
+            if ((level.ordinal() < threshold) || !allow()) {
+                return null;
+            }
+            Event event = claim();
+            if (event != null) {
+                event.site = this;
+                event.suppressed = suppressed.getAndSet(0);
+            }
+            return event;
+        }
+
+        private boolean allow() {
+            if (minIntervalNanos == 0) {
+                return true;
+            }
+            long now = System.nanoTime();
+            long allowedAt = nextAllowed.get();
+            if (((allowedAt == Long.MIN_VALUE) || (now - allowedAt >= 0)) &&
+                    nextAllowed.compareAndSet(allowedAt, now + minIntervalNanos)) {
+                return true;
+            }
+            suppressed.incrementAndGet();
+            return false;
+        }
+
+        private static String[] split(String template) {
+            List<String> parts = new ArrayList<>();
+            int start = 0;
+            int placeholder;
+            while ((placeholder = template.indexOf("{}", start)) >= 0) {
+                parts.add(template.substring(start, placeholder));
+                start = placeholder + 2;
+            }
+            parts.add(template.substring(start));
+            return parts.toArray(new String[0]);
+        }
+    }
+
+    /**
+     * A slot in the ring. Its fields are written by the logging thread before it is published
+     * and read by the drain thread afterwards.
+     */
+    private static final class Event {
+        private volatile long published = -1;
+        private long sequence;
+        private Site site;
+        private int suppressed;
+        private int argCount;
+        private final byte[] argTypes = new byte[MAX_ARGS];
+        private final long[] longArgs = new long[MAX_ARGS];
+        private final double[] doubleArgs = new double[MAX_ARGS];
+        private final Object[] objectArgs = new Object[MAX_ARGS];
+
+        private void add(long arg) {
+            if (argCount < MAX_ARGS) {
+                argTypes[argCount] = LONG_ARG;
+                longArgs[argCount++] = arg;
+            }
+        }
+
+        private void add(double arg) {
+            if (argCount < MAX_ARGS) {
+                argTypes[argCount] = DOUBLE_ARG;
+                doubleArgs[argCount++] = arg;
+            }
+        }
+
+        private void add(Object arg) {
+            if (argCount < MAX_ARGS) {
+                argTypes[argCount] = OBJECT_ARG;
+                Object value;
+                try {
+                    value = isImmutable(arg) ? arg : String.valueOf(arg);
+                } catch (RuntimeException e) {
+                    // The slot is claimed, so it must still be published with something in it
+                    value = "<toString failed: " + e + ">";
+                }
+                objectArgs[argCount++] = value;
+            }
+        }
+
+        private static boolean isImmutable(Object arg) {
+            // Not Number, which includes the mutable atomics. Throwables are kept so the drain
+            // thread can print their stack trace
+            return (arg == null) || (arg instanceof String) || (arg instanceof Integer) || (arg instanceof Long) ||
+                    (arg instanceof Double) || (arg instanceof Float) || (arg instanceof Boolean) ||
+                    (arg instanceof Character) || (arg instanceof Enum) || (arg instanceof Throwable);
+        }
+
+        private void publish() {
+            published = sequence;
+        }
+
+        /**
+         * Formats the message and returns the first throwable argument, if any.
+         */
+        private Throwable format(StringBuilder line) {
+            Throwable thrown = null;
+            line.append('[').append(site.level).append("] ");
+            String[] segments = site.segments;
+            for (int i = 0; i < segments.length; i++) {
+                line.append(segments[i]);
+                if (i < (segments.length - 1)) {
+                    if (i >= argCount) {
+                        line.append("{}");
+                    } else if (argTypes[i] == LONG_ARG) {
+                        line.append(longArgs[i]);
+                    } else if (argTypes[i] == DOUBLE_ARG) {
+                        line.append(doubleArgs[i]);
+                    } else {
+                        line.append(objectArgs[i]);
+                        if ((thrown == null) && (objectArgs[i] instanceof Throwable)) {
+                            thrown = (Throwable) objectArgs[i];
+                        }
+                    }
+                }
+            }
+            if (suppressed > 0) {
+                line.append(" (").append(suppressed).append(" more)");
+            }
+            return thrown;
+        }
+
+        private void clear() {
+            for (int i = 0; i < MAX_ARGS; i++) {
+                objectArgs[i] = null;
+            }
+            argCount = 0;
+            site = null;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package frc.team3407.motion;
+
+/**
+ * Position, velocity and acceleration of a one dimensional move, sampled at a fixed interval.
+ *
+ * <p>Profiles are generated ahead of time, typically in {@code robotInit}, into primitive arrays
+ * so playing one back is an array lookup per loop. A trapezoidal profile accelerates at the
+ * limit, cruises and decelerates; an S-curve also limits jerk, which avoids wheel slip and
+ * tipping at the corners of the trapezoid. Distances may be negative to move backwards.
+ */
+public final class MotionProfile {
+
+    private final double interval;
+    private final double[] position;
+    private final double[] velocity;
+    private final double[] acceleration;
+
+    private MotionProfile(double interval, double[] position, double[] velocity, double[] acceleration) {
+        this.interval = interval;
+        this.position = position;
+        this.velocity = velocity;
+        this.acceleration = acceleration;
+    }
+
+    /**
+     * Generates a profile that reaches the distance as fast as the velocity and acceleration
+     * limits allow. Short moves never reach the maximum velocity.
+     *
+     * @param interval seconds between samples, the robot loop period for playback
+     */
+    public static MotionProfile trapezoidal(double distance, double maxVelocity, double maxAcceleration,
+                                            double interval) {
+        checkLimits(maxVelocity, maxAcceleration, interval);
+        double length = Math.abs(distance);
+        double direction = Math.signum(distance);
+
+        double accelerationTime = maxVelocity / maxAcceleration;
+        double peakVelocity = maxVelocity;
+        if ((maxAcceleration * accelerationTime * accelerationTime) > length) {
+            // Triangle profile, decelerating before reaching the maximum velocity
+            accelerationTime = Math.sqrt(length / maxAcceleration);
+            peakVelocity = maxAcceleration * accelerationTime;
+        }
+        double accelerationDistance = 0.5 * maxAcceleration * accelerationTime * accelerationTime;
+        double cruiseTime = (peakVelocity > 0) ? ((length - (2 * accelerationDistance)) / peakVelocity) : 0;
+        double decelerationStart = accelerationTime + cruiseTime;
+        double duration = decelerationStart + accelerationTime;
+
+        int samples = (int) Math.ceil(duration / interval) + 1;
+        double[] position = new double[samples];
+        double[] velocity = new double[samples];
+        double[] acceleration = new double[samples];
+        for (int i = 0; i < samples; i++) {
+            double t = Math.min(i * interval, duration);
+            double p;
+            double v;
+            double a;
+            if (t < accelerationTime) {
+                a = maxAcceleration;
+                v = maxAcceleration * t;
+                p = 0.5 * maxAcceleration * t * t;
+            } else if (t < decelerationStart) {
+                a = 0;
+                v = peakVelocity;
+                p = accelerationDistance + (peakVelocity * (t - accelerationTime));
+            } else {
+                double remaining = duration - t;
+                a = -maxAcceleration;
+                v = maxAcceleration * remaining;
+                p = length - (0.5 * maxAcceleration * remaining * remaining);
+            }
+            position[i] = direction * p;
+            velocity[i] = direction * v;
+            acceleration[i] = direction * a;
+        }
+        acceleration[samples - 1] = 0;
+        return new MotionProfile(interval, position, velocity, acceleration);
+    }
+
+    /**
+     * Generates a jerk limited profile by averaging the velocity of the trapezoidal profile over
+     * the time it takes to ramp up to the maximum acceleration. The averaging rounds the corners
+     * of the trapezoid and makes the move that much longer; the distance stays the same. Moves
+     * too short to cruise reverse the acceleration within one ramp, so the jerk at the peak is up
+     * to twice the limit.
+     */
+    public static MotionProfile sCurve(double distance, double maxVelocity, double maxAcceleration,
+                                       double maxJerk, double interval) {
+        if (maxJerk <= 0) {
+            throw new IllegalArgumentException("Jerk limit must be positive");
+        }
+        MotionProfile trapezoid = trapezoidal(distance, maxVelocity, maxAcceleration, interval);
+        int window = Math.max(1, (int) Math.round(maxAcceleration / maxJerk / interval));
+        if ((window == 1) || (trapezoid.getLength() < 2)) {
+            return trapezoid;
+        }
+
+        int samples = trapezoid.getLength() + window - 1;
+        double[] position = new double[samples];
+        double[] velocity = new double[samples];
+        double[] acceleration = new double[samples];
+        double sum = 0;
+        for (int i = 0; i < samples; i++) {
+            if (i < trapezoid.velocity.length) {
+                sum += trapezoid.velocity[i];
+            }
+            if (i >= window) {
+                sum -= trapezoid.velocity[i - window];
+            }
+            velocity[i] = sum / window;
+        }
+        velocity[samples - 1] = 0;
+
+        for (int i = 1; i < samples; i++) {
+            position[i] = position[i - 1] + (0.5 * (velocity[i - 1] + velocity[i]) * interval);
+            acceleration[i - 1] = (velocity[i] - velocity[i - 1]) / interval;
+        }
+        // Integrating the samples is off by a fraction of a sample, end exactly at the distance
+        double scale = (position[samples - 1] != 0) ? (distance / position[samples - 1]) : 0;
+        for (int i = 0; i < samples; i++) {
+            position[i] *= scale;
+            velocity[i] *= scale;
+            acceleration[i] *= scale;
+        }
+        return new MotionProfile(interval, position, velocity, acceleration);
+    }
+
+    /**
+     * The same profile moving in the opposite direction.
+     */
+    public MotionProfile negate() {
+        double[] negatedPosition = new double[position.length];
+        double[] negatedVelocity = new double[velocity.length];
+        double[] negatedAcceleration = new double[acceleration.length];
+        for (int i = 0; i < position.length; i++) {
+            negatedPosition[i] = -position[i];
+            negatedVelocity[i] = -velocity[i];
+            negatedAcceleration[i] = -acceleration[i];
+        }
+        return new MotionProfile(interval, negatedPosition, negatedVelocity, negatedAcceleration);
+    }
+
+    /**
+     * Seconds between samples.
+     */
+    public double getInterval() {
+        return interval;
+    }
+
+    public int getLength() {
+        return position.length;
+    }
+
+    /**
+     * Seconds from the first to the last sample.
+     */
+    public double getDuration() {
+        return (position.length - 1) * interval;
+    }
+
+    /**
+     * The sample at the given time from the start, the last one once the profile has ended.
+     */
+    public int getIndex(double seconds) {
+        int index = (int) (seconds / interval);
+        return Math.max(0, Math.min(index, position.length - 1));
+    }
+
+    public double getPosition(int index) {
+        return position[index];
+    }
+
+    public double getVelocity(int index) {
+        return velocity[index];
+    }
+
+    public double getAcceleration(int index) {
+        return acceleration[index];
+    }
+
+    private static void checkLimits(double maxVelocity, double maxAcceleration, double interval) {
+        if ((maxVelocity <= 0) || (maxAcceleration <= 0) || (interval <= 0)) {
+            throw new IllegalArgumentException("Velocity, acceleration and interval must be positive");
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package frc.team3407.profiling;
+
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import frc.team3407.logging.Level;
+import frc.team3407.logging.Log;
+import frc.team3407.vision.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the robot loop and named sections of it, such as the periodic methods. Commands are
+ * timed together in the section around {@code Scheduler.getInstance().run()} of each mode, so
+ * they keep the standard {@code Command} methods and do not depend on the profiler.
+ *
+ * <p>A loop runs from {@link #beginLoop()} to {@link #endLoop()}. Its duration is counted as an
+ * overrun when it takes longer than the period, and the difference between the time since the
+ * previous loop began and the period is recorded as jitter. Sections are timed with
+ * {@link #start()} and {@link #stop(int, long)} around the code of interest.
+ *
+ * <p>Every sample goes into fixed size histograms, one for the rolling window and one since the
+ * last report, so profiling does not allocate in the loop. Each window the percentiles are put on
+ * the SmartDashboard under {@code Profiler/}; {@link #report()} logs everything since the last
+ * report. All methods are meant to be called from the robot's main thread.
+ */
+public class LoopProfiler {
+
+    private static final Log.Site LOG_LOOPS = Log.site(Level.INFO,
+            "Loop profile over {} loops: {} overruns, {}");
+    private static final Log.Site LOG_SECTION = Log.site(Level.INFO, "Loop profile {}: {} calls, {}");
+
+    private static final String DASHBOARD_PREFIX = "Profiler/";
+    private static final String LOOP_NAME = "loop";
+    private static final String JITTER_NAME = "jitter";
+    private static final String OVERRUNS_KEY = DASHBOARD_PREFIX + LOOP_NAME + "/overruns";
+    private static final long DEFAULT_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final long periodNanos;
+    private final long windowNanos;
+    private final Section loop = new Section(LOOP_NAME);
+    private final Section jitter = new Section(JITTER_NAME);
+    private final List<Section> sections = new ArrayList<>();
+
+    private boolean enabled = true;
+    private long loopStart = 0;
+    private long lastLoopStart = 0;
+    private long windowStart = 0;
+    private long overruns = 0;
+    private long windowOverruns = 0;
+
+    public LoopProfiler(double periodSeconds) {
+        this(periodSeconds, DEFAULT_WINDOW_NANOS);
+    }
+
+    public LoopProfiler(double periodSeconds, long windowNanos) {
+        this.periodNanos = (long) (periodSeconds * TimeUnit.SECONDS.toNanos(1));
+        this.windowNanos = windowNanos;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        lastLoopStart = 0;
+        loopStart = 0;
+    }
+
+    /**
+     * Returns the id of the section with the given name, adding it the first time. Sections are
+     * meant to be added up front, for example in constructors.
+     */
+    public int addSection(String name) {
+        for (int i = 0; i < sections.size(); i++) {
+            if (sections.get(i).name.equals(name)) {
+                return i;
+            }
+        }
+        sections.add(new Section(name));
+        return sections.size() - 1;
+    }
+
+    public void beginLoop() {
+        if (!enabled) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (lastLoopStart != 0) {
+            jitter.record(Math.abs((now - lastLoopStart) - periodNanos));
+        }
+        lastLoopStart = now;
+        loopStart = now;
+        if (windowStart == 0) {
+            windowStart = now;
+        }
+    }
+
+    public void endLoop() {
+        if (!enabled || (loopStart == 0)) {
+            return;
+        }
+        long now = System.nanoTime();
+        long duration = now - loopStart;
+        loop.record(duration);
+        if (duration > periodNanos) {
+            overruns++;
+            windowOverruns++;
+        }
+        loopStart = 0;
+
+        if ((now - windowStart) >= windowNanos) {
+            publish();
+            windowStart = now;
+        }
+    }
+
+    /**
+     * The start time to pass to {@link #stop(int, long)}.
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    public void stop(int section, long start) {
+        if (start != 0) {
+            sections.get(section).record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Logs the loop, jitter and every section since the last report, then starts over. Nothing
+     * is logged when no loop has run since.
+     */
+    public void report() {
+        if (loop.total.getCount() == 0) {
+            return;
+        }
+        LOG_LOOPS.log(loop.total.getCount(), overruns, "time " + describe(loop.total) +
+                ", jitter " + describe(jitter.total));
+        for (Section section : sections) {
+            if (section.total.getCount() > 0) {
+                LOG_SECTION.log(section.name, section.total.getCount(), describe(section.total));
+            }
+            section.total.reset();
+        }
+        loop.total.reset();
+        jitter.total.reset();
+        overruns = 0;
+        lastLoopStart = 0;
+    }
+
+    private void publish() {
+        loop.publish();
+        jitter.publish();
+        for (Section section : sections) {
+            section.publish();
+        }
+        SmartDashboard.putNumber(OVERRUNS_KEY, windowOverruns);
+        windowOverruns = 0;
+    }
+
+    private static String describe(LatencyHistogram histogram) {
+        return String.format(Locale.US, "p50 %.3f p95 %.3f p99 %.3f max %.3f ms",
+                histogram.getValueAtPercentile(50) / 1e6, histogram.getValueAtPercentile(95) / 1e6,
+                histogram.getValueAtPercentile(99) / 1e6, histogram.getMax() / 1e6);
+    }
+
+    private static class Section {
+        private final String name;
+        private final LatencyHistogram window = new LatencyHistogram();
+        private final LatencyHistogram total = new LatencyHistogram();
+        // Keys are built once so publishing does not concatenate strings
+        private final String p50Key;
+        private final String p95Key;
+        private final String maxKey;
+
+        private Section(String name) {
+            this.name = name;
+            p50Key = DASHBOARD_PREFIX + name + "/p50";
+            p95Key = DASHBOARD_PREFIX + name + "/p95";
+            maxKey = DASHBOARD_PREFIX + name + "/max";
+        }
+
+        private void record(long nanos) {
+            window.record(nanos);
+            total.record(nanos);
+        }
+
+        private void publish() {
+            if (window.getCount() == 0) {
+                return;
+            }
+            SmartDashboard.putNumber(p50Key, window.getValueAtPercentile(50) / 1e6);
+            SmartDashboard.putNumber(p95Key, window.getValueAtPercentile(95) / 1e6);
+            SmartDashboard.putNumber(maxKey, window.getMax() / 1e6);
+            window.reset();
+        }
+    }
+}
@@ -1,16 +1,48 @@
 package frc.team3407.subsystems;
 
-
+import edu.wpi.first.wpilibj.Notifier;
 import edu.wpi.first.wpilibj.SpeedController;
 import edu.wpi.first.wpilibj.SpeedControllerGroup;
 import edu.wpi.first.wpilibj.Victor;
 import edu.wpi.first.wpilibj.command.Subsystem;
 import edu.wpi.first.wpilibj.drive.DifferentialDrive;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import frc.team3407.RobotMap;
 import frc.team3407.commands.DriveCommand;
+import frc.team3407.logging.Level;
+import frc.team3407.logging.Log;
+import frc.team3407.vision.LatencyHistogram;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * The tank drive.
+ *
+ * <p>By default the motors are set directly by the commands, once per robot loop. After
+ * {@link #startControlLoop(double)} a {@link Notifier} sets them at its own rate instead and the
+ * commands only store a setpoint: both sides packed as floats into one atomic long, so setting
+ * never blocks and the loop never sees the left speed of one setpoint with the right of another.
+ * The loop limits how fast the outputs ramp, stops the motors when commands stop setting them,
+ * and puts its period jitter and run time on the SmartDashboard every second.
+ *
+ * <p>Both ways the speeds are clamped, given a deadband and, for {@link #tank}, squared here, so
+ * the motors see the same output for the same speeds whichever way they are set.
+ * {@link #stopImmediately()} skips the ramp.
+ */
 public class DriveBase extends Subsystem {
 
+    private static final Log.Site LOG_CONTROL_LOOP = Log.site(Level.INFO, "Drive control loop at {} Hz");
+    private static final Log.Site LOG_LOOP_STATS = Log.site(Level.DEBUG,
+            "Drive control loop jitter p99 {} ms, max {} ms, run time p99 {} ms", 5000);
+
+    private static final String DASHBOARD_PREFIX = "DriveBase/";
+    // Like motor safety, stop when no command has set the speeds for this long
+    private static final long SETPOINT_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long STATS_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // The DifferentialDrive default, applied here instead
+    static final double DEADBAND = 0.02;
+
     // Put methods for controlling this subsystem
     // here. Call these from Commands.
 
@@ -24,16 +56,188 @@ public class DriveBase extends Subsystem {
 
     private DifferentialDrive drive = new DifferentialDrive(leftMotors, rightMotors);
 
+    private final AtomicLong setpoint = new AtomicLong(pack(0, 0));
+    private volatile long setpointNanos = 0;
+    private volatile double maxOutputChangePerSecond = 0;
+    private volatile boolean resetOutputs = false;
+    private Notifier notifier;
+
+    // Only used by the control loop
+    private long periodNanos;
+    private long lastTickNanos = 0;
+    private long statsWindowStart = 0;
+    private double leftOutput = 0;
+    private double rightOutput = 0;
+    private final LatencyHistogram jitter = new LatencyHistogram();
+    private final LatencyHistogram runTime = new LatencyHistogram();
+
+    public DriveBase() {
+        drive.setDeadband(0);
+    }
+
     public void initDefaultCommand() {
         setDefaultCommand(new DriveCommand());
     }
 
     public void tank(double leftSpeed, double rightSpeed){
-        drive.tankDrive(leftSpeed, rightSpeed);
+        setOutputs(shape(leftSpeed, true), shape(rightSpeed, true));
+    }
+
+    /**
+     * Drives with outputs proportional to the speeds, for feedforward control. {@link #tank}
+     * squares them to make the joysticks less sensitive.
+     */
+    public void tankLinear(double leftSpeed, double rightSpeed){
+        setOutputs(shape(leftSpeed, false), shape(rightSpeed, false));
     }
 
+    /**
+     * Stops the motors, ramping down when the control loop limits how fast the outputs change.
+     */
     public void stop(){
-        drive.tankDrive(0,0);
+        setOutputs(0, 0);
+    }
+
+    /**
+     * Stops the motors now, without the ramp, such as when the robot is disabled.
+     */
+    public void stopImmediately() {
+        setSetpoint(0, 0);
+        // The control loop zeroes its ramp on the next tick, in case it sets the motors after this
+        resetOutputs = true;
+        drive.tankDrive(0, 0, false);
+    }
+
+    /**
+     * Sets the motors from a {@link Notifier} at the given rate, for example 200 Hz, until
+     * {@link #stopControlLoop()}. Call it from the robot's main thread.
+     */
+    public synchronized void startControlLoop(double ratePerSecond) {
+        if (notifier != null) {
+            return;
+        }
+        LOG_CONTROL_LOOP.log(ratePerSecond);
+        periodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+        lastTickNanos = 0;
+        leftOutput = 0;
+        rightOutput = 0;
+        setSetpoint(0, 0);
+        notifier = new Notifier(this::controlLoop);
+        notifier.startPeriodic(1.0 / ratePerSecond);
+    }
+
+    public synchronized void stopControlLoop() {
+        if (notifier != null) {
+            notifier.stop();
+            notifier.close();
+            notifier = null;
+            drive.tankDrive(0, 0);
+        }
+    }
+
+    /**
+     * Limits how fast the control loop changes the outputs, in full output per second. Zero,
+     * the default, applies the setpoint at once.
+     */
+    public void setMaxOutputChangePerSecond(double maxOutputChangePerSecond) {
+        this.maxOutputChangePerSecond = maxOutputChangePerSecond;
+    }
+
+    private void setOutputs(double left, double right) {
+        if (notifier != null) {
+            setSetpoint(left, right);
+        } else {
+            drive.tankDrive(left, right, false);
+        }
+    }
+
+    private void setSetpoint(double left, double right) {
+        setpoint.set(pack(left, right));
+        setpointNanos = System.nanoTime();
+    }
+
+    private void controlLoop() {
+        long start = System.nanoTime();
+        if (lastTickNanos != 0) {
+            jitter.record(Math.abs((start - lastTickNanos) - periodNanos));
+        }
+        lastTickNanos = start;
+
+        if (resetOutputs) {
+            resetOutputs = false;
+            leftOutput = 0;
+            rightOutput = 0;
+        }
+        double left = 0;
+        double right = 0;
+        if ((start - setpointNanos) < SETPOINT_TIMEOUT_NANOS) {
+            long packed = setpoint.get();
+            left = unpackLeft(packed);
+            right = unpackRight(packed);
+        }
+        double maxChange = maxOutputChangePerSecond * periodNanos / TimeUnit.SECONDS.toNanos(1);
+        left = ramp(leftOutput, left, maxChange);
+        right = ramp(rightOutput, right, maxChange);
+        leftOutput = left;
+        rightOutput = right;
+        drive.tankDrive(left, right, false);
+
+        long end = System.nanoTime();
+        runTime.record(end - start);
+        if (statsWindowStart == 0) {
+            statsWindowStart = end;
+        } else if ((end - statsWindowStart) >= STATS_WINDOW_NANOS) {
+            publishStats();
+            statsWindowStart = end;
+        }
+    }
+
+    private void publishStats() {
+        double jitterP99 = jitter.getValueAtPercentile(99) / 1e6;
+        double jitterMax = jitter.getMax() / 1e6;
+        double runTimeP99 = runTime.getValueAtPercentile(99) / 1e6;
+        SmartDashboard.putNumber(DASHBOARD_PREFIX + "jitterP99", jitterP99);
+        SmartDashboard.putNumber(DASHBOARD_PREFIX + "jitterMax", jitterMax);
+        SmartDashboard.putNumber(DASHBOARD_PREFIX + "runTimeP99", runTimeP99);
+        LOG_LOOP_STATS.log(jitterP99, jitterMax, runTimeP99);
+        jitter.reset();
+        runTime.reset();
+    }
+
+    /**
+     * The output for a speed: clamped to full output, with the deadband removed and rescaled,
+     * then squared keeping the sign when asked, as DifferentialDrive does.
+     */
+    static double shape(double speed, boolean squared) {
+        double output = Math.max(-1, Math.min(1, speed));
+        if (Math.abs(output) <= DEADBAND) {
+            return 0;
+        }
+        output = (output - Math.copySign(DEADBAND, output)) / (1 - DEADBAND);
+        return squared ? Math.copySign(output * output, output) : output;
+    }
+
+    /**
+     * Moves the output toward the target by at most the given change, all at once when it is 0.
+     */
+    static double ramp(double output, double target, double maxChange) {
+        if (maxChange <= 0) {
+            return target;
+        }
+        return output + Math.max(-maxChange, Math.min(maxChange, target - output));
+    }
+
+    static long pack(double left, double right) {
+        return ((long) Float.floatToRawIntBits((float) left) << 32) |
+                (Float.floatToRawIntBits((float) right) & 0xffffffffL);
+    }
+
+    static double unpackLeft(long packed) {
+        return Float.intBitsToFloat((int) (packed >>> 32));
+    }
+
+    static double unpackRight(long packed) {
+        return Float.intBitsToFloat((int) packed);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,393 @@
+package frc.team3407.vision;
+
+import frc.team3407.logging.Level;
+import frc.team3407.logging.Log;
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Finds the smallest set of HSL threshold bands that recognizes hatch targets in enough frames.
+ *
+ * <p>Every band on a grid of minimum hue, saturation and luminance is run on its own over all
+ * frames. Bands are then picked greedily, each time the one that recognizes the most frames not
+ * yet covered, until the chosen bands together reach the target hit rate. Bands that find
+ * targets in too many frames labeled as having none are never picked. Because rectangles from
+ * different bands are paired together, the chosen set is run once more as a whole to confirm
+ * the hit rate.
+ *
+ * <p>Frames can come from a labeled corpus on disk, see {@link #main(String...)}, or be added
+ * while the robot is disabled. Either way some frames must be labeled as having no target,
+ * otherwise nothing stops the loosest bands, which pair up noise, from being picked. A
+ * calibration can be cancelled by interrupting the thread running it.
+ */
+public class BandCalibrator {
+
+    private static final Log.Site LOG_CANDIDATES = Log.site(Level.INFO, "Calibrating {} bands on {} frames");
+    private static final Log.Site LOG_PICKED = Log.site(Level.INFO, "Picked band {} covering {} frames");
+    private static final Log.Site LOG_RESULT = Log.site(Level.INFO, "Calibrated {} bands: {}");
+
+    public static final double DEFAULT_TARGET_HIT_RATE = 0.95;
+
+    private static final double[] HUE_STEPS = {10, 20, 30, 40, 50, 60, 70, 80};
+    private static final double[] SATURATION_STEPS = {0, 20, 40, 60, 80, 100};
+    private static final double[] LUMINANCE_STEPS = {60, 80, 100, 120, 140, 160, 180};
+    private static final int MAX_BANDS = 4;
+    // A band may find targets in this fraction of the frames without one
+    private static final double MAX_FALSE_POSITIVE_RATE = 0.05;
+    // A target counts as found when its midpoint is this fraction of the width from the label
+    private static final double MIDPOINT_TOLERANCE = 0.05;
+
+    private final double targetHitRate;
+    private final List<Sample> samples = new ArrayList<>();
+
+    public BandCalibrator(double targetHitRate) {
+        this.targetHitRate = targetHitRate;
+    }
+
+    /**
+     * Adds a frame that shows a target somewhere.
+     */
+    public void addFrame(Mat image) {
+        addFrame(image, true, Double.NaN);
+    }
+
+    /**
+     * Adds a labeled frame. The midpoint is the x coordinate of the target, or NaN when any
+     * target in the frame counts. The image is copied.
+     */
+    public void addFrame(Mat image, boolean hasTarget, double midpoint) {
+        samples.add(new Sample(image.clone(), hasTarget, midpoint));
+    }
+
+    public int getFrameCount() {
+        return samples.size();
+    }
+
+    /**
+     * The number of frames labeled as having no target.
+     */
+    public int getNegativeFrameCount() {
+        int count = 0;
+        for (Sample sample : samples) {
+            if (!sample.hasTarget) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Searches for the bands. Every candidate band is a full recognizer pass over all frames,
+     * so the thread is checked for an interrupt between them.
+     *
+     * @throws IllegalStateException if no frame is labeled as having no target
+     * @throws InterruptedException if the thread was interrupted, no bands are returned
+     */
+    public Result calibrate() throws InterruptedException {
+        if (getNegativeFrameCount() == 0) {
+            throw new IllegalStateException("No frames without a target to check bands for false positives");
+        }
+        List<double[]> candidates = new ArrayList<>();
+        for (double hue : HUE_STEPS) {
+            for (double saturation : SATURATION_STEPS) {
+                for (double luminance : LUMINANCE_STEPS) {
+                    candidates.add(new double[] {hue, saturation, luminance});
+                }
+            }
+        }
+        LOG_CANDIDATES.log(candidates.size(), samples.size());
+
+        BitSet positives = new BitSet();
+        for (int i = 0; i < samples.size(); i++) {
+            positives.set(i, samples.get(i).hasTarget);
+        }
+        int negativeCount = samples.size() - positives.cardinality();
+        int maxFalsePositives = (int) Math.floor(negativeCount * MAX_FALSE_POSITIVE_RATE);
+
+        List<double[]> eligible = new ArrayList<>();
+        List<BitSet> eligibleHits = new ArrayList<>();
+        List<Integer> eligibleFalsePositives = new ArrayList<>();
+        for (double[] candidate : candidates) {
+            checkInterrupted();
+            Evaluation evaluation = evaluate(new double[][] {candidate});
+            if (evaluation.falsePositives <= maxFalsePositives) {
+                eligible.add(candidate);
+                eligibleHits.add(evaluation.hits);
+                eligibleFalsePositives.add(evaluation.falsePositives);
+            }
+        }
+
+        List<double[]> chosen = new ArrayList<>();
+        BitSet covered = new BitSet();
+        Evaluation combined = null;
+        while (chosen.size() < MAX_BANDS) {
+            checkInterrupted();
+            int best = -1;
+            int bestGain = 0;
+            for (int i = 0; i < eligible.size(); i++) {
+                BitSet gain = (BitSet) eligibleHits.get(i).clone();
+                gain.andNot(covered);
+                int gainCount = gain.cardinality();
+                if (gainCount == 0) {
+                    continue;
+                }
+                // Fewer false positives decides between bands that cover as many new frames
+                if ((best < 0) || (gainCount > bestGain) || ((gainCount == bestGain) &&
+                        (eligibleFalsePositives.get(i) < eligibleFalsePositives.get(best)))) {
+                    best = i;
+                    bestGain = gainCount;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+
+            chosen.add(eligible.get(best));
+            covered.or(eligibleHits.get(best));
+            combined = null;
+            LOG_PICKED.log(Arrays.toString(eligible.get(best)), bestGain);
+
+            if (rate(covered.cardinality(), positives.cardinality()) >= targetHitRate) {
+                combined = evaluate(chosen.toArray(new double[0][]));
+                if (rate(combined.hits.cardinality(), positives.cardinality()) >= targetHitRate) {
+                    break;
+                }
+            }
+        }
+
+        if (chosen.isEmpty()) {
+            return new Result(new double[0][], 0, 0, samples.size(), false);
+        }
+        double[][] bands = chosen.toArray(new double[0][]);
+        if (combined == null) {
+            combined = evaluate(bands);
+        }
+        double hitRate = rate(combined.hits.cardinality(), positives.cardinality());
+        double falsePositiveRate = rate(combined.falsePositives, negativeCount);
+        Result result = new Result(bands, hitRate, falsePositiveRate, samples.size(), hitRate >= targetHitRate);
+        LOG_RESULT.log(bands.length, result);
+        return result;
+    }
+
+    /**
+     * Releases the copies of the frames.
+     */
+    public void release() {
+        for (Sample sample : samples) {
+            sample.image.release();
+        }
+        samples.clear();
+    }
+
+    private Evaluation evaluate(double[][] bands) {
+        Evaluation evaluation = new Evaluation();
+        HatchTargetRecognizer recognizer = new HatchTargetRecognizer(bands);
+        try {
+            for (int i = 0; i < samples.size(); i++) {
+                Sample sample = samples.get(i);
+                List<HatchTarget> hatchTargets = recognizer.find(sample.image, (rr, idx) -> {});
+                if (!sample.hasTarget) {
+                    if (!hatchTargets.isEmpty()) {
+                        evaluation.falsePositives++;
+                    }
+                } else if (isFound(sample, hatchTargets)) {
+                    evaluation.hits.set(i);
+                }
+            }
+        } finally {
+            recognizer.release();
+        }
+        return evaluation;
+    }
+
+    private static boolean isFound(Sample sample, List<HatchTarget> hatchTargets) {
+        if (Double.isNaN(sample.midpoint)) {
+            return !hatchTargets.isEmpty();
+        }
+        double tolerance = sample.image.width() * MIDPOINT_TOLERANCE;
+        for (HatchTarget hatchTarget : hatchTargets) {
+            if (Math.abs(hatchTarget.getMidPoint() - sample.midpoint) <= tolerance) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void checkInterrupted() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException("Band calibration cancelled");
+        }
+    }
+
+    private static double rate(int count, int total) {
+        return (total == 0) ? 1 : (double) count / total;
+    }
+
+    /**
+     * Calibrates bands on a directory of images and writes them to the deploy directory.
+     *
+     * <pre>
+     * BandCalibrator &lt;image directory&gt; [--labels labels.csv] [--rate 0.95] [--out file]
+     * </pre>
+     *
+     * <p>The labels file has a line "name, hasTarget[, midpoint x]" for each image; images that
+     * are not listed are left out. Without a labels file every image counts as showing a
+     * target, and since there is then nothing to check false positives on, no bands are
+     * written.
+     */
+    public static void main(String... args) throws IOException, InterruptedException {
+        File directory = null;
+        File labels = null;
+        File output = new File("src/main/deploy", HatchBands.FILE_NAME);
+        double targetHitRate = DEFAULT_TARGET_HIT_RATE;
+        for (int i = 0; i < args.length; i++) {
+            boolean hasValue = (i + 1) < args.length;
+            if (args[i].equals("--labels") && hasValue) {
+                labels = new File(args[++i]);
+            } else if (args[i].equals("--rate") && hasValue) {
+                targetHitRate = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("--out") && hasValue) {
+                output = new File(args[++i]);
+            } else if (!args[i].startsWith("--") && (directory == null)) {
+                directory = new File(args[i]);
+            } else {
+                directory = null;
+                break;
+            }
+        }
+        if (directory == null) {
+            System.err.println("Usage: BandCalibrator <image directory> [--labels labels.csv] [--rate 0.95] [--out file]");
+            System.exit(1);
+        }
+
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+        Map<String, double[]> labelMap = (labels == null) ? null : readLabels(labels);
+        BandCalibrator calibrator = new BandCalibrator(targetHitRate);
+        RecordedFrameSource frameSource = new RecordedFrameSource(directory, 1);
+        Mat frame = new Mat();
+        try {
+            while (frameSource.next(frame)) {
+                if (labelMap == null) {
+                    calibrator.addFrame(frame);
+                } else if (labelMap.containsKey(frameSource.getName())) {
+                    double[] label = labelMap.get(frameSource.getName());
+                    calibrator.addFrame(frame, label[0] != 0, label[1]);
+                }
+            }
+        } finally {
+            frameSource.close();
+            frame.release();
+        }
+
+        if (calibrator.getNegativeFrameCount() == 0) {
+            calibrator.release();
+            System.out.println("No frames labeled without a target, add some to the labels file; bands not written");
+            System.exit(2);
+        }
+        Result result = calibrator.calibrate();
+        calibrator.release();
+        System.out.println(result);
+        if (!result.isTargetMet()) {
+            System.out.println("Target hit rate " + targetHitRate + " not reached, bands not written");
+            System.exit(2);
+        }
+        HatchBands.write(output, result.getBands(), result.getComments());
+        System.out.println("Wrote " + output);
+        System.exit(0);
+    }
+
+    private static Map<String, double[]> readLabels(File file) throws IOException {
+        Map<String, double[]> labels = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] values = line.trim().split("\\s*,\\s*");
+                if ((values.length < 2) || values[0].startsWith("#") || values[0].equals("name")) {
+                    continue;
+                }
+                boolean hasTarget = Boolean.parseBoolean(values[1]) || values[1].equals("1");
+                double midpoint = (values.length > 2) ? Double.parseDouble(values[2]) : Double.NaN;
+                labels.put(values[0], new double[] {hasTarget ? 1 : 0, midpoint});
+            }
+        }
+        return labels;
+    }
+
+    /**
+     * The bands picked by a calibration and how well they did together.
+     */
+    public static class Result {
+        private final double[][] bands;
+        private final double hitRate;
+        private final double falsePositiveRate;
+        private final int frames;
+        private final boolean targetMet;
+
+        private Result(double[][] bands, double hitRate, double falsePositiveRate, int frames, boolean targetMet) {
+            this.bands = bands;
+            this.hitRate = hitRate;
+            this.falsePositiveRate = falsePositiveRate;
+            this.frames = frames;
+            this.targetMet = targetMet;
+        }
+
+        public double[][] getBands() {
+            return bands;
+        }
+
+        public double getHitRate() {
+            return hitRate;
+        }
+
+        public double getFalsePositiveRate() {
+            return falsePositiveRate;
+        }
+
+        public boolean isTargetMet() {
+            return targetMet;
+        }
+
+        public List<String> getComments() {
+            List<String> comments = new ArrayList<>();
+            comments.add("Calibrated by BandCalibrator on " + frames + " frames");
+            comments.add(String.format(Locale.US, "Hit rate %.3f, false positive rate %.3f", hitRate, falsePositiveRate));
+            return comments;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d bands %s, hit rate %.3f, false positive rate %.3f",
+                    bands.length, Arrays.deepToString(bands), hitRate, falsePositiveRate);
+        }
+    }
+
+    private static class Sample {
+        private final Mat image;
+        private final boolean hasTarget;
+        private final double midpoint;
+
+        private Sample(Mat image, boolean hasTarget, double midpoint) {
+            this.image = image;
+            this.hasTarget = hasTarget;
+            this.midpoint = midpoint;
+        }
+    }
+
+    private static class Evaluation {
+        private final BitSet hits = new BitSet();
+        private int falsePositives = 0;
+    }
+}
@@ -0,0 +1,46 @@
+package frc.team3407.vision;
+
+import org.opencv.core.Mat;
+
+/**
+ * A frame buffer handed from a {@link FrameGrabber} to whatever processes it. The image Mat is
+ * reused for later frames once the frame is returned to the grabber.
+ */
+public class Frame {
+
+    private final Mat image = new Mat();
+    private long captureTime;
+    private long captureDelay;
+    private long grabTime;
+
+    public Mat getImage() {
+        return image;
+    }
+
+    /**
+     * The time the frame was captured, in microseconds, as reported by cscore.
+     */
+    public long getCaptureTime() {
+        return captureTime;
+    }
+
+    /**
+     * Microseconds from capture until the grab returned, or zero if it could not be measured.
+     */
+    public long getCaptureDelay() {
+        return captureDelay;
+    }
+
+    /**
+     * The {@link System#nanoTime()} when the grab returned.
+     */
+    public long getGrabTime() {
+        return grabTime;
+    }
+
+    void setTimes(long captureTime, long captureDelay, long grabTime) {
+        this.captureTime = captureTime;
+        this.captureDelay = captureDelay;
+        this.grabTime = grabTime;
+    }
+}
@@ -0,0 +1,185 @@
+package frc.team3407.vision;
+
+import edu.wpi.cscore.CvSink;
+import edu.wpi.cscore.VideoSource;
+import edu.wpi.first.networktables.NetworkTablesJNI;
+import frc.team3407.logging.Level;
+import frc.team3407.logging.Log;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Grabs frames from a video source on its own thread and keeps only the newest one.
+ *
+ * <p>Frames are handed over through a single slot. A frame that has not been taken when the
+ * next one arrives is replaced and reused, so a slow consumer always gets the newest frame and
+ * never works through a queue of old ones. Three frame buffers are enough for the grabber, the
+ * slot and the consumer, and no buffers are allocated after start up.
+ */
+public class FrameGrabber {
+
+    private static final Log.Site LOG_GRAB_FAILED = Log.site(Level.WARN, "Frame grab failed for {}: {}", 1000);
+
+    private static final int FRAME_COUNT = 3;
+    private static final double GRAB_TIMEOUT_SECONDS = 0.5;
+    // Capture delays longer than this mean the clocks do not agree, so they are not trusted
+    private static final long MAX_CAPTURE_DELAY_MICROSECONDS = 1000000;
+
+    private final String name;
+    private final CvSink sink;
+    private final AtomicReference<Frame> latestFrame = new AtomicReference<>();
+    private final ArrayBlockingQueue<Frame> freeFrames = new ArrayBlockingQueue<>(FRAME_COUNT);
+
+    private volatile Thread consumer;
+    private volatile Runnable frameListener;
+    private volatile boolean running = false;
+    private volatile long grabbedFrames = 0;
+    private volatile long droppedFrames = 0;
+    private Thread thread;
+
+    public FrameGrabber(VideoSource videoSource) {
+        name = videoSource.getName();
+        sink = new CvSink("FrameGrabber_" + name);
+        sink.setSource(videoSource);
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            freeFrames.add(new Frame());
+        }
+        VisionBuffers.countAllocations(FRAME_COUNT);
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        sink.setEnabled(true);
+        thread = new Thread(this::run, "FrameGrabber-" + name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        sink.setEnabled(false);
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    /**
+     * Takes the newest frame, or returns null if there is no frame newer than the last one taken.
+     * The frame must be given back with {@link #release(Frame)}.
+     */
+    public Frame poll() {
+        return latestFrame.getAndSet(null);
+    }
+
+    /**
+     * Takes the newest frame, waiting up to the timeout for one to arrive. Returns null if none
+     * arrived. The frame must be given back with {@link #release(Frame)}.
+     */
+    public Frame take(long timeoutNanos) {
+        consumer = Thread.currentThread();
+        long deadline = System.nanoTime() + timeoutNanos;
+        Frame frame = poll();
+        while (frame == null) {
+            long remaining = deadline - System.nanoTime();
+            if ((remaining <= 0) || Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+            LockSupport.parkNanos(this, remaining);
+            frame = poll();
+        }
+        return frame;
+    }
+
+    /**
+     * Whether a frame newer than the last one taken is waiting.
+     */
+    public boolean hasFrame() {
+        return latestFrame.get() != null;
+    }
+
+    /**
+     * Called on the grabber thread every time a new frame is ready.
+     */
+    public void setFrameListener(Runnable frameListener) {
+        this.frameListener = frameListener;
+    }
+
+    public void release(Frame frame) {
+        freeFrames.offer(frame);
+    }
+
+    public long getGrabbedFrames() {
+        return grabbedFrames;
+    }
+
+    /**
+     * Frames that were replaced by a newer frame before anything took them.
+     */
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    private void run() {
+        Frame frame;
+        try {
+            // Waits for a grabber thread that is still stopping to give its frame back
+            frame = freeFrames.take();
+        } catch (InterruptedException e) {
+            return;
+        }
+        try {
+            while (running && !Thread.currentThread().isInterrupted()) {
+                long captureTime = sink.grabFrame(frame.getImage(), GRAB_TIMEOUT_SECONDS);
+                if (captureTime == 0) {
+                    LOG_GRAB_FAILED.log(name, sink.getError());
+                    continue;
+                }
+                // cscore and NetworkTables time frames with the same wpilib clock
+                long captureDelay = NetworkTablesJNI.now() - captureTime;
+                if ((captureDelay < 0) || (captureDelay > MAX_CAPTURE_DELAY_MICROSECONDS)) {
+                    captureDelay = 0;
+                }
+                frame.setTimes(captureTime, captureDelay, System.nanoTime());
+                grabbedFrames++;
+
+                Frame replaced = latestFrame.getAndSet(frame);
+                Thread waiting = consumer;
+                if (waiting != null) {
+                    LockSupport.unpark(waiting);
+                }
+                Runnable listener = frameListener;
+                if (listener != null) {
+                    listener.run();
+                }
+
+                if (replaced != null) {
+                    droppedFrames++;
+                    frame = replaced;
+                } else {
+                    // The frame is in the slot now, so it is not ours to give back
+                    frame = null;
+                    try {
+                        frame = freeFrames.take();
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                }
+            }
+        } finally {
+            // Stopped while holding a frame, give it back so a restart has all the buffers
+            if (frame != null) {
+                freeFrames.offer(frame);
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package frc.team3407.vision;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Stage timings and candidate counts for the last frame searched by a
+ * {@link HatchTargetRecognizer}. Bands that run in parallel add to the same totals, so a stage
+ * time is the work done in that stage rather than the time it held up the frame.
+ */
+public class FrameStats {
+
+    private final AtomicLongArray stageNanos = new AtomicLongArray(VisionStage.STAGES.length);
+    private final AtomicInteger contours = new AtomicInteger();
+    private volatile int rectangles;
+    private volatile int pairs;
+    private volatile int targets;
+    private volatile long totalNanos;
+
+    void reset() {
+        for (int i = 0; i < VisionStage.STAGES.length; i++) {
+            stageNanos.set(i, 0);
+        }
+        contours.set(0);
+        rectangles = 0;
+        pairs = 0;
+        targets = 0;
+        totalNanos = 0;
+    }
+
+    void addStageNanos(VisionStage stage, long nanos) {
+        stageNanos.addAndGet(stage.ordinal(), nanos);
+    }
+
+    void addContours(int count) {
+        contours.addAndGet(count);
+    }
+
+    void setRectangles(int rectangles) {
+        this.rectangles = rectangles;
+    }
+
+    void setPairs(int pairs) {
+        this.pairs = pairs;
+    }
+
+    void setTargets(int targets) {
+        this.targets = targets;
+    }
+
+    void setTotalNanos(long totalNanos) {
+        this.totalNanos = totalNanos;
+    }
+
+    public long getStageNanos(VisionStage stage) {
+        return stageNanos.get(stage.ordinal());
+    }
+
+    public int getContours() {
+        return contours.get();
+    }
+
+    public int getRectangles() {
+        return rectangles;
+    }
+
+    public int getPairs() {
+        return pairs;
+    }
+
+    public int getTargets() {
+        return targets;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+}
@@ -19,10 +19,12 @@ public class GripPipeline {
 	private double[] hslThresholdHue = {0.0, 180.0};
 	private double[] hslThresholdSaturation = {0.0, 255.0};
 	private double[] hslThresholdLuminance = {0.0, 255.0};
+	private boolean findContoursExternalOnly = false;
 
 	//Outputs
 	private Mat hslThresholdOutput = new Mat();
 	private ArrayList<MatOfPoint> findContoursOutput = new ArrayList<MatOfPoint>();
+	private Mat findContoursHierarchy = new Mat();
 
 	public void setMinHue(double hue) {
 		hslThresholdHue[0] = hue;
@@ -36,6 +38,13 @@ public class GripPipeline {
 		hslThresholdLuminance[0] = luminance;
 	}
 
+	/**
+	 * Selects whether only outer contours are found, leaving out contours nested inside others.
+	 */
+	public void setExternalOnly(boolean externalOnly) {
+		findContoursExternalOnly = externalOnly;
+	}
+
 	/**
 	 * This is the primary method that runs the entire pipeline and updates the outputs.
 	 */
@@ -46,7 +55,6 @@ public class GripPipeline {
 
 		// Step Find_Contours0:
 		Mat findContoursInput = hslThresholdOutput;
-		boolean findContoursExternalOnly = false;
 		findContours(findContoursInput, findContoursExternalOnly, findContoursOutput);
 	}
 
@@ -58,6 +66,15 @@ public class GripPipeline {
 		return hslThresholdOutput;
 	}
 
+	/**
+	 * Releases the native memory held by the outputs.
+	 */
+	public void release() {
+		VisionBuffers.releaseContours(findContoursOutput);
+		hslThresholdOutput.release();
+		findContoursHierarchy.release();
+	}
+
 	/**
 	 * This method is a generated getter for the output of a Find_Contours.
 	 * @return ArrayList<MatOfPoint> output from Find_Contours.
@@ -91,8 +108,7 @@ public class GripPipeline {
 	 */
 	private void findContours(Mat input, boolean externalOnly,
 		List<MatOfPoint> contours) {
-		Mat hierarchy = new Mat();
-		contours.clear();
+		Mat hierarchy = findContoursHierarchy;
 		int mode;
 		if (externalOnly) {
 			mode = Imgproc.RETR_EXTERNAL;
@@ -101,7 +117,7 @@ public class GripPipeline {
 			mode = Imgproc.RETR_LIST;
 		}
 		int method = Imgproc.CHAIN_APPROX_SIMPLE;
-		Imgproc.findContours(input, contours, hierarchy, mode, method);
+		VisionBuffers.findContours(input, contours, hierarchy, mode, method, null);
 	}
 }
 
@@ -0,0 +1,115 @@
+package frc.team3407.vision;
+
+import frc.team3407.logging.Level;
+import frc.team3407.logging.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes the HSL threshold bands used by {@link HatchTargetRecognizer}.
+ *
+ * <p>The bands file has one band per line as "min hue, min saturation, min luminance" and lines
+ * starting with # are comments. {@link BandCalibrator} writes it to src/main/deploy, from where
+ * it is deployed to the robot with the code.
+ */
+public class HatchBands {
+
+    public static final String FILE_NAME = "hatch_bands.txt";
+    // Overrides where the bands file is looked for, for example on a coprocessor
+    public static final String FILE_PROPERTY = "vision.bands";
+
+    private static final Log.Site LOG_LOADED = Log.site(Level.INFO, "Loaded {} hatch bands from {}");
+    private static final Log.Site LOG_DEFAULT = Log.site(Level.INFO, "No hatch bands file found, using the default bands");
+    private static final Log.Site LOG_FAILED = Log.site(Level.WARN, "Unable to read hatch bands from {}: {}");
+
+    // Deploy directory on the robot, then the source deploy directory when run from the project
+    private static final String[] SEARCH_DIRECTORIES = {"/home/lvuser/deploy", "src/main/deploy"};
+
+    private HatchBands() {
+    }
+
+    /**
+     * Loads the deployed bands, falling back to the built in bands when there is no usable file.
+     */
+    public static double[][] load() {
+        File file = find();
+        if (file != null) {
+            try {
+                double[][] bands = read(file);
+                LOG_LOADED.log(bands.length, file);
+                return bands;
+            } catch (IOException | IllegalArgumentException e) {
+                LOG_FAILED.log(file, e.getMessage());
+            }
+        } else {
+            LOG_DEFAULT.log();
+        }
+        return HatchTargetRecognizer.DEFAULT_HSL;
+    }
+
+    public static File find() {
+        String property = System.getProperty(FILE_PROPERTY);
+        if (property != null) {
+            File file = new File(property);
+            return file.isFile() ? file : null;
+        }
+        for (String directory : SEARCH_DIRECTORIES) {
+            File file = new File(directory, FILE_NAME);
+            if (file.isFile()) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    public static double[][] read(File file) throws IOException {
+        List<double[]> bands = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] values = line.split("\\s*,\\s*");
+                if (values.length != 3) {
+                    throw new IllegalArgumentException("Expected min hue, saturation and luminance: " + line);
+                }
+                bands.add(new double[] {
+                        Double.parseDouble(values[0]),
+                        Double.parseDouble(values[1]),
+                        Double.parseDouble(values[2])});
+            }
+        }
+        if (bands.isEmpty()) {
+            throw new IllegalArgumentException("No bands in " + file);
+        }
+        return bands.toArray(new double[0][]);
+    }
+
+    /**
+     * Writes the bands with the given comment lines above them.
+     */
+    public static void write(File file, double[][] bands, List<String> comments) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null) {
+            directory.mkdirs();
+        }
+        try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
+            for (String comment : comments) {
+                writer.println("# " + comment);
+            }
+            writer.println("# min hue, min saturation, min luminance");
+            for (double[] band : bands) {
+                writer.println(band[0] + ", " + band[1] + ", " + band[2]);
+            }
+        }
+    }
+}
@@ -47,4 +47,22 @@ public class HatchTarget {
     public static double getLongSide(Size size) {
         return Math.max(size.height, size.width);
     }
+
+    /**
+     * Half the width of the upright box that contains the rotated rectangle.
+     */
+    public static double getHalfWidth(RotatedRect rotatedRect) {
+        double radians = Math.toRadians(rotatedRect.angle);
+        return (Math.abs(rotatedRect.size.width * Math.cos(radians)) +
+                Math.abs(rotatedRect.size.height * Math.sin(radians))) / 2;
+    }
+
+    /**
+     * Half the height of the upright box that contains the rotated rectangle.
+     */
+    public static double getHalfHeight(RotatedRect rotatedRect) {
+        double radians = Math.toRadians(rotatedRect.angle);
+        return (Math.abs(rotatedRect.size.width * Math.sin(radians)) +
+                Math.abs(rotatedRect.size.height * Math.cos(radians))) / 2;
+    }
 }
@@ -1,48 +1,129 @@
 package frc.team3407.vision;
 
 import edu.wpi.cscore.VideoSource;
-import edu.wpi.first.vision.VisionPipeline;
-import edu.wpi.first.vision.VisionThread;
+import frc.team3407.logging.Level;
+import frc.team3407.logging.Log;
 import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.RotatedRect;
 
 import java.util.Comparator;
 import java.util.List;
-
-public class HatchTargetPipeline implements VisionPipeline {
-
-    private final HatchTargetRecognizer targetRecognizer = new HatchTargetRecognizer();
-    private final NetworkTableTargetData networkTableTargetData = new NetworkTableTargetData();
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Finds the hatch target in each frame and tracks it from frame to frame.
+ *
+ * <p>The tracking state belongs to the thread processing frames. After every frame it publishes
+ * an immutable {@link HatchTargetResult}, and every getter reads the latest one, so readers
+ * never block the vision thread and always see the values of a single frame.
+ */
+public class HatchTargetPipeline implements TimedVisionPipeline, HatchTargetSource {
+
+    private final HatchTargetRecognizer targetRecognizer;
+    private NetworkTableTargetData networkTableTargetData;
+    private final StageLatencies stageLatencies = new StageLatencies();
     private final int width;
+    private final String tableName;
 
-    private double offset;
+    private final AtomicReference<HatchTargetResult> result;
 
+    // Tracking state, only used by the thread processing frames
+    private double offset;
     private int hits = 0;
     private long count = 0;
     private long duration = 0;
     private int staleCount = 0;
-    private long lastSnapshotTime = 0;
+    private boolean hasTarget = false;
+    private double offsetVelocity = 0;
+    private long lastHitCaptureTime = 0;
+
+    private boolean regionTracking = false;
+    private HatchTarget lastHatchTarget;
+    private final Rect searchRegion = new Rect();
+
+    private static final Log.Site LOG_ATTACH = Log.site(Level.INFO, "Attaching hatch target pipeline to {}, publishing to {}");
+    private static final Log.Site LOG_HITS = Log.site(Level.INFO, "Processing image: hits={}", 1000);
+
+    static final int MAX_STALE_COUNT = 5;
+    // Hits further apart than this are not used to estimate how fast the offset changes
+    static final long MAX_VELOCITY_INTERVAL_MICROSECONDS = 500000;
+
+    // Search region padding as a fraction of the last target width, added on every side
+    private static final double REGION_PADDING = 0.5;
+    // Each frame without a hit widens the padding by another step
+    private static final double REGION_PADDING_STEP = 0.5;
+    // Misses before the search goes back to the whole frame
+    private static final int REGION_MAX_STALE_COUNT = 3;
+
+    /**
+     * Attaches a hatch target pipeline for a camera to a shared scheduler. The results are
+     * published to the named table.
+     */
+    public static VisionScheduler.Camera<HatchTargetPipeline> attach(VisionScheduler visionScheduler,
+                                                                     VideoSource videoSource, String tableName,
+                                                                     double framesPerSecond, int priority) {
+        LOG_ATTACH.log(videoSource.getName(), tableName);
+        HatchTargetPipeline hatchTargetPipeline = new HatchTargetPipeline(videoSource.getVideoMode().width, tableName);
+        hatchTargetPipeline.setRegionTracking(true);
+        return visionScheduler.attach(videoSource, hatchTargetPipeline, pipeline -> pipeline.setTargetData(),
+                framesPerSecond, priority);
+    }
 
-    private static final int MAX_STALE_COUNT = 5;
-    private static final long SNAPSHOT_INTERVAL_MILLISECONDS = 250;
+    /**
+     * A pipeline for frames of the given width. Nothing is published to the network tables
+     * until {@link #setTargetData()} is called, so the pipeline can also run offline.
+     */
+    HatchTargetPipeline(int width) {
+        this(width, NetworkTableTargetData.VISION_TABLE_HATCH);
+    }
 
-    public static void startVisionThread(VideoSource videoSource) {
-        System.out.println("Starting vision thread");
-        new VisionThread(videoSource, new HatchTargetPipeline(videoSource.getVideoMode().width), pipeline -> pipeline.setTargetData()).start();
+    HatchTargetPipeline(int width, String tableName) {
+        this(width, tableName, new HatchTargetRecognizer());
     }
 
-    private HatchTargetPipeline(int width) {
+    /**
+     * A pipeline with its own recognizer. Tests that only call {@link #track} pass null, so no
+     * native buffers are needed.
+     */
+    HatchTargetPipeline(int width, String tableName, HatchTargetRecognizer targetRecognizer) {
         this.width = width;
+        this.tableName = tableName;
+        this.targetRecognizer = targetRecognizer;
+        result = new AtomicReference<>(HatchTargetResult.none(width));
+    }
+
+    HatchTargetRecognizer getRecognizer() {
+        return targetRecognizer;
+    }
+
+    /**
+     * Selects whether frames after a hit are only searched in a padded window around the last
+     * target. The window widens with every miss and the whole frame is searched again once
+     * the target has been missing for a few frames.
+     */
+    public void setRegionTracking(boolean regionTracking) {
+        this.regionTracking = regionTracking;
     }
 
     @Override
-    public void process(Mat image) {
+    public void process(Mat image, long captureTime, long captureDelay, long grabTime) {
         long start = System.currentTimeMillis();
-        if ((start - lastSnapshotTime) < SNAPSHOT_INTERVAL_MILLISECONDS) {
-            return;
-        }
 
-        List<HatchTarget> hatchTargets = targetRecognizer.find(image, (rr,idx) -> {});
+        Rect region = getSearchRegion(image);
+        List<HatchTarget> hatchTargets = targetRecognizer.find(image, region, (rr,idx) -> {});
+        stageLatencies.record(targetRecognizer.getFrameStats(), System.nanoTime());
+
+        LOG_HITS.log((hatchTargets == null) ? 0 : hatchTargets.size());
+        long end = System.currentTimeMillis();
+        track(hatchTargets, end - start, captureTime, captureDelay, grabTime);
+    }
 
+    /**
+     * Updates the tracked target with the targets found in one frame.
+     */
+    void track(List<HatchTarget> hatchTargets, long frameDuration, long captureTime, long captureDelay,
+               long grabTime) {
         int hitCount = (hatchTargets == null) ? 0 : hatchTargets.size();
         int hit = 0;
         HatchTarget hatchTarget = null;
@@ -58,27 +139,100 @@ public class HatchTargetPipeline implements VisionPipeline {
             hit = 1;
         }
 
-        System.out.println("Processing image: hits=" + hitCount);
-        long end = System.currentTimeMillis();
-        synchronized (this) {
-            count++;
-            duration += (end - start);
-            hits += hit;
-            if (hit == 0) {
-                staleCount++;
-                if (staleCount == MAX_STALE_COUNT) {
-                    offset = width;
-                    staleCount = 0;
-                }
-            } else {
+        count++;
+        duration += frameDuration;
+        hits += hit;
+        if (hit == 0) {
+            staleCount++;
+            if (staleCount == MAX_STALE_COUNT) {
+                offset = width;
+                offsetVelocity = 0;
+                hasTarget = false;
                 staleCount = 0;
-                offset = targetOffset;
+                lastHatchTarget = null;
+            }
+        } else {
+            long interval = captureTime - lastHitCaptureTime;
+            if (hasTarget && (lastHitCaptureTime > 0) && (interval > 0) &&
+                    (interval < MAX_VELOCITY_INTERVAL_MICROSECONDS)) {
+                offsetVelocity = (targetOffset - offset) * 1000000.0 / interval;
+            } else {
+                offsetVelocity = 0;
             }
+            lastHitCaptureTime = captureTime;
+            staleCount = 0;
+            offset = targetOffset;
+            hasTarget = true;
+            lastHatchTarget = hatchTarget;
         }
+
+        result.set(new HatchTargetResult(offset, hasTarget, offsetVelocity, width, staleCount, hits, count,
+                duration, captureTime, captureDelay, grabTime));
     }
 
-    public synchronized void setTargetData() {
-        networkTableTargetData.update(offset, staleCount, hits, count, duration);
+    private Rect getSearchRegion(Mat image) {
+        if (!regionTracking || (lastHatchTarget == null) || (staleCount >= REGION_MAX_STALE_COUNT)) {
+            return null;
+        }
+
+        RotatedRect left = lastHatchTarget.getLeft();
+        RotatedRect right = lastHatchTarget.getRight();
+        double minX = Math.min(left.center.x - HatchTarget.getHalfWidth(left), right.center.x - HatchTarget.getHalfWidth(right));
+        double maxX = Math.max(left.center.x + HatchTarget.getHalfWidth(left), right.center.x + HatchTarget.getHalfWidth(right));
+        double minY = Math.min(left.center.y - HatchTarget.getHalfHeight(left), right.center.y - HatchTarget.getHalfHeight(right));
+        double maxY = Math.max(left.center.y + HatchTarget.getHalfHeight(left), right.center.y + HatchTarget.getHalfHeight(right));
+
+        double padding = (maxX - minX) * (REGION_PADDING + (REGION_PADDING_STEP * staleCount));
+        int x = Math.max(0, (int) (minX - padding));
+        int y = Math.max(0, (int) (minY - padding));
+        int regionWidth = Math.min(image.width(), (int) Math.ceil(maxX + padding)) - x;
+        int regionHeight = Math.min(image.height(), (int) Math.ceil(maxY + padding)) - y;
+        if ((regionWidth <= 0) || (regionHeight <= 0) ||
+                ((regionWidth == image.width()) && (regionHeight == image.height()))) {
+            return null;
+        }
+
+        searchRegion.x = x;
+        searchRegion.y = y;
+        searchRegion.width = regionWidth;
+        searchRegion.height = regionHeight;
+        return searchRegion;
+    }
+
+    /**
+     * The result of the latest frame. Never blocks.
+     */
+    @Override
+    public HatchTargetResult getResult() {
+        return result.get();
+    }
+
+    public int getStaleCount() {
+        return result.get().getStaleCount();
+    }
+
+    public int getHits() {
+        return result.get().getHits();
+    }
+
+    /**
+     * Publishes the latest result to the network tables. Called on the vision thread after
+     * each frame.
+     */
+    public void setTargetData() {
+        if (networkTableTargetData == null) {
+            networkTableTargetData = new NetworkTableTargetData(tableName);
+            networkTableTargetData.setWidth(width);
+        }
+        HatchTargetResult current = result.get();
+        double latency = (current.getCaptureDelay() / 1000.0) +
+                ((System.nanoTime() - current.getGrabTime()) / 1000000.0);
+        networkTableTargetData.update(current.getOffset(), current.hasTarget(), current.getStaleCount(),
+                current.getHits(), current.getCount(), current.getDuration(), current.getCaptureTime(), latency,
+                current.getOffsetVelocity());
+        if (stageLatencies.takeUpdate()) {
+            networkTableTargetData.updateStageLatencies(stageLatencies);
+        }
     }
 
     private class HatchTargetComparator implements Comparator<HatchTarget> {
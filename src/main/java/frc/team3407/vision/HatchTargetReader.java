@@ -0,0 +1,71 @@
+package frc.team3407.vision;
+
+import edu.wpi.first.networktables.EntryListenerFlags;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.NetworkTablesJNI;
+
+/**
+ * Reads the hatch target published by {@link NetworkTableTargetData} and corrects the offset for
+ * how old it is, so the robot steers toward where the target is now rather than where it was
+ * when the frame was captured.
+ *
+ * <p>The entries are not polled. A listener on the packed result turns it into a
+ * {@link HatchTargetResult} when it arrives, so readers always see the values of a single frame
+ * and never wait on the network tables. The capture time of a result is moved to the clock of
+ * this process by subtracting the latency measured by the vision code, up to publishing, from
+ * the time the result arrived here.
+ */
+public class HatchTargetReader implements HatchTargetSource {
+
+    private static final double[] NO_RESULT = new double[0];
+
+    private final NetworkTable table;
+    private final int listenerHandle;
+
+    private volatile HatchTargetResult result = HatchTargetResult.none(0);
+
+    public HatchTargetReader() {
+        this(NetworkTableInstance.getDefault());
+    }
+
+    public HatchTargetReader(NetworkTableInstance instance) {
+        this(instance, NetworkTableTargetData.VISION_TABLE_HATCH);
+    }
+
+    public HatchTargetReader(NetworkTableInstance instance, String tableName) {
+        table = instance.getTable(tableName);
+        listenerHandle = table.addEntryListener(NetworkTableTargetData.RESULT_NAME,
+                (changedTable, key, entry, value, flags) -> update(entry.getDoubleArray(NO_RESULT)),
+                EntryListenerFlags.kImmediate | EntryListenerFlags.kNew | EntryListenerFlags.kUpdate);
+    }
+
+    /**
+     * Stops listening for new results.
+     */
+    public void close() {
+        table.removeEntryListener(listenerHandle);
+    }
+
+    @Override
+    public HatchTargetResult getResult() {
+        return result;
+    }
+
+    private void update(double[] packed) {
+        if (packed.length < NetworkTableTargetData.RESULT_LENGTH) {
+            return;
+        }
+        long arrivalTime = NetworkTablesJNI.now();
+        // Published in milliseconds, microseconds here
+        long latency = Math.max(0, (long) (packed[NetworkTableTargetData.RESULT_LATENCY] * 1000));
+        result = new HatchTargetResult(packed[NetworkTableTargetData.RESULT_OFFSET],
+                packed[NetworkTableTargetData.RESULT_HAS_TARGET] != 0,
+                packed[NetworkTableTargetData.RESULT_VELOCITY],
+                (int) packed[NetworkTableTargetData.RESULT_WIDTH],
+                (int) packed[NetworkTableTargetData.RESULT_STALE],
+                (int) packed[NetworkTableTargetData.RESULT_HITS],
+                (long) packed[NetworkTableTargetData.RESULT_SEQUENCE],
+                0, arrivalTime - latency, 0, System.nanoTime() - (latency * 1000));
+    }
+}
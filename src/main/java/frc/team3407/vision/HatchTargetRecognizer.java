@@ -1,20 +1,28 @@
 package frc.team3407.vision;
 
+import frc.team3407.logging.Level;
+import frc.team3407.logging.Log;
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfPoint;
 import org.opencv.core.MatOfPoint2f;
 import org.opencv.core.Point;
+import org.opencv.core.Rect;
 import org.opencv.core.RotatedRect;
 import org.opencv.imgproc.Imgproc;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 import java.util.function.BiConsumer;
 
 public class HatchTargetRecognizer {
 
-    private static final double[][] HSL = {
+    // Used when no calibrated bands have been deployed
+    static final double[][] DEFAULT_HSL = {
             {49.0, 57.0, 126.0},
             {20.0, 23.0,  90.0},
             {66.0,  0.0,  90.0},
@@ -28,62 +36,413 @@ public class HatchTargetRecognizer {
     private static final double MIN_ANGLE = 10;
     private static final double MAX_ANGLE = 80;
 
-    private static final double RECTANGLE_PAIR_MIN_X_DIFFERENCE = 50;
-    private static final double RECTANGLE_PAIR_MAX_X_DIFFERENCE = 200;
+    static final double RECTANGLE_PAIR_MIN_X_DIFFERENCE = 50;
+    static final double RECTANGLE_PAIR_MAX_X_DIFFERENCE = 200;
     private static final double RECTANGLE_PAIR_MAX_Y_DIFFERENCE = 10;
     private static final double RECTANGLE_PAIR_MAX_SIDE_DIFFERENCE = 15;
+    static final double SAME_TARGET_MAX_MIDPOINT_DIFFERENCE = 10;
+
+    private static final int PARALLEL_FILTER_MIN_CONTOURS = 64;
+
+    // Fewer points lie on a line, so their rectangle has no width and no ratio
+    private static final int MIN_CONTOUR_POINTS = 3;
+    // The long side of a rectangle is at most this times the longer side of its upright box
+    private static final double BOUNDING_BOX_DIAGONAL = Math.sqrt(2);
+    // Tape fills most of its rectangle, noise such as outlines and specks does not
+    private static final double MIN_CONTOUR_FILL = 0.5;
+
+    private static final int MAX_PYRAMID_LEVELS = 2;
+    private static final double COARSE_SIZE_TOLERANCE = 1.25;
+    private static final double COARSE_RATIO_TOLERANCE = 1.5;
+    // Refine region padding as a fraction of the coarse rectangle long side
+    private static final double REFINE_PADDING = 0.25;
+
+    private static final Log.Site LOG_BAND_MATCHES = Log.site(Level.DEBUG, "Found {} possible target matches");
+    private static final Log.Site LOG_PAIRS = Log.site(Level.DEBUG, "Found {} possible hatch matches");
+    private static final Log.Site LOG_TARGETS = Log.site(Level.DEBUG, "Found {} hatch matches after removing duplicates");
+    private static final Log.Site LOG_REGIONS = Log.site(Level.DEBUG, "Refining {} regions");
+    private static final Log.Site LOG_PIPELINE_TIME = Log.site(Level.DEBUG, "Pipeline ran in {} milliseconds");
+    private static final Log.Site LOG_CONTOURS = Log.site(Level.DEBUG, "Found {} contours");
+
+    private final double[][] hsl;
+    private final VisionBuffers buffers;
+    private final MultiBandPipeline multiBandPipeline;
+    private final GripPipeline[] gripPipelines;
+    private final MultiBandPipeline coarsePipeline;
+    private final Mat[] pyramid = new Mat[MAX_PYRAMID_LEVELS];
+    private boolean multiBand = true;
+    private boolean pooledBuffers = true;
+    private boolean parallel = false;
+    private int pyramidLevels = 0;
+    private boolean contourPrefilter = true;
+    private boolean contourFillFilter = false;
+    private boolean externalContours = false;
+    private final FrameStats frameStats = new FrameStats();
+
+    /**
+     * A recognizer for the bands deployed with the robot code, see {@link HatchBands#load()}.
+     */
+    public HatchTargetRecognizer() {
+        this(HatchBands.load());
+    }
+
+    /**
+     * A recognizer that thresholds each frame with the given {min hue, min saturation, min
+     * luminance} bands. Every band costs a threshold and contour pass per frame.
+     */
+    public HatchTargetRecognizer(double[][] hsl) {
+        if (hsl.length == 0) {
+            throw new IllegalArgumentException("At least one band is needed");
+        }
+        this.hsl = hsl;
+        buffers = new VisionBuffers(hsl.length);
+        multiBandPipeline = new MultiBandPipeline(hsl, buffers);
+        gripPipelines = new GripPipeline[hsl.length];
+        coarsePipeline = new MultiBandPipeline(hsl);
+        for (int i = 0; i < pyramid.length; i++) {
+            pyramid[i] = new Mat();
+        }
+        VisionBuffers.countAllocations(pyramid.length);
+        multiBandPipeline.setFrameStats(frameStats);
+        coarsePipeline.setFrameStats(frameStats);
+    }
+
+    public double[][] getBands() {
+        return hsl;
+    }
+
+    /**
+     * Selects whether contours are checked against cheap bounds on their point count, upright
+     * box and area before a rotated rectangle is fitted to them. The bounds only reject contours
+     * the rotated rectangle checks would also reject, so the targets found are the same.
+     */
+    public void setContourPrefilter(boolean contourPrefilter) {
+        this.contourPrefilter = contourPrefilter;
+    }
+
+    /**
+     * Selects whether the prefilter also rejects contours that fill less than half of the
+     * smallest rectangle that could pass. Off by default: outlines and specks are dropped
+     * sooner, but so is tape seen as a thin or broken outline, which the rotated rectangle
+     * checks would accept.
+     */
+    public void setContourFillFilter(boolean contourFillFilter) {
+        this.contourFillFilter = contourFillFilter;
+    }
+
+    /**
+     * Selects whether only outer contours are found, leaving out contours nested inside others.
+     */
+    public void setExternalContours(boolean externalContours) {
+        multiBandPipeline.setExternalOnly(externalContours);
+        coarsePipeline.setExternalOnly(externalContours);
+        for (GripPipeline gripPipeline : gripPipelines) {
+            if (gripPipeline != null) {
+                gripPipeline.setExternalOnly(externalContours);
+            }
+        }
+        this.externalContours = externalContours;
+    }
+
+    /**
+     * Stage timings and candidate counts of the last call to find.
+     */
+    public FrameStats getFrameStats() {
+        return frameStats;
+    }
 
-    private static final boolean VERBOSE = false;
+    /**
+     * Selects whether the image is converted to HLS once and shared by all bands (the default)
+     * or converted again by a separate {@link GripPipeline} for every band.
+     */
+    public void setMultiBand(boolean multiBand) {
+        this.multiBand = multiBand;
+    }
+
+    /**
+     * Selects whether native buffers are reused from frame to frame (the default) or allocated
+     * again for every band and contour and left for the garbage collector.
+     */
+    public void setPooledBuffers(boolean pooledBuffers) {
+        this.pooledBuffers = pooledBuffers;
+    }
+
+    /**
+     * Selects whether the bands, and the contour filtering of long contour lists, run on the
+     * {@link VisionWorkerPool}. Results are merged in band and contour order, so the targets
+     * found are the same as when everything runs on the calling thread. Off by default, and
+     * best left off for recognizers on a {@link VisionScheduler} with more than one worker,
+     * whose frames would otherwise compete for the same cores.
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * Sets how many times the image is halved for a first, coarse search. Zero, the default,
+     * searches the full resolution image directly. With one or two levels only the regions
+     * around coarse candidates are searched at full resolution, so offsets keep full precision.
+     * Only used in multi-band mode.
+     */
+    public void setPyramidLevels(int pyramidLevels) {
+        if ((pyramidLevels < 0) || (pyramidLevels > MAX_PYRAMID_LEVELS)) {
+            throw new IllegalArgumentException("Pyramid levels must be between 0 and " + MAX_PYRAMID_LEVELS);
+        }
+        this.pyramidLevels = pyramidLevels;
+    }
+
+    /**
+     * Releases the native buffers. The recognizer cannot be used afterwards.
+     */
+    public void release() {
+        multiBandPipeline.release();
+        coarsePipeline.release();
+        for (Mat level : pyramid) {
+            level.release();
+        }
+        for (int i = 0; i < gripPipelines.length; i++) {
+            if (gripPipelines[i] != null) {
+                gripPipelines[i].release();
+                gripPipelines[i] = null;
+            }
+        }
+    }
 
     public List<HatchTarget> find(Mat image, BiConsumer<RotatedRect,Integer> processConsumer) {
+        return find(image, null, processConsumer);
+    }
+
+    /**
+     * Finds hatch targets within a region of the image. The rectangles and targets found are in
+     * the coordinates of the whole image and size limits are scaled to the whole image width.
+     * The region is only used in multi-band mode; a null region searches the whole image.
+     */
+    public List<HatchTarget> find(Mat image, Rect region, BiConsumer<RotatedRect,Integer> processConsumer) {
+        long findStartTime = System.nanoTime();
+        frameStats.reset();
+
+        List<List<RotatedRect>> bandRectangles;
+        if (multiBand && (pyramidLevels > 0) && (region == null)) {
+            bandRectangles = processPyramid(image);
+        } else {
+            if (multiBand) {
+                multiBandPipeline.convert(image, region);
+            }
+            bandRectangles = processBands(multiBand ? multiBandPipeline : null, image, image.width(), false);
+        }
+
         ArrayList<RotatedRect> possibeTargetMatches = new ArrayList<>();
-        for (int i = 0;i < HSL.length;i++) {
-            List<RotatedRect> rectangles = process(image, HSL[i][0], HSL[i][1], HSL[i][2]);
-            log("Found %s possible target matches", rectangles.size());
+        for (int i = 0;i < hsl.length;i++) {
+            List<RotatedRect> rectangles = bandRectangles.get(i);
+            LOG_BAND_MATCHES.log(rectangles.size());
             for (RotatedRect rectangle : rectangles) {
                 processConsumer.accept(rectangle, i);
             }
             possibeTargetMatches.addAll(rectangles);
         }
+        frameStats.setRectangles(possibeTargetMatches.size());
 
+        long startTime = System.nanoTime();
         List<HatchTarget> hatchTargets = findHatchTargets(possibeTargetMatches);
-        System.out.println(String.format("Found %s possible hatch matches", hatchTargets.size()));
+        frameStats.setPairs(hatchTargets.size());
+        long endTime = System.nanoTime();
+        frameStats.addStageNanos(VisionStage.PAIRING, endTime - startTime);
+        LOG_PAIRS.log(hatchTargets.size());
+
+        startTime = System.nanoTime();
         hatchTargets = filterSameHatchTargets(hatchTargets);
-        log("Found %s hatch matches after removing duplicates", hatchTargets.size());
+        endTime = System.nanoTime();
+        frameStats.addStageNanos(VisionStage.DEDUP, endTime - startTime);
+        frameStats.setTargets(hatchTargets.size());
+        frameStats.setTotalNanos(endTime - findStartTime);
+        LOG_TARGETS.log(hatchTargets.size());
 
         return hatchTargets;
     }
 
-    private List<RotatedRect> process(Mat image, double minHue, double minSaturation, double minLuminance) {
+    /**
+     * Finds candidate rectangles on a reduced copy of the image and then searches again at full
+     * resolution only in the regions around those candidates.
+     */
+    private List<List<RotatedRect>> processPyramid(Mat image) {
+        long startTime = System.nanoTime();
+        Mat coarseImage = image;
+        for (int i = 0; i < pyramidLevels; i++) {
+            Imgproc.pyrDown(coarseImage, pyramid[i]);
+            coarseImage = pyramid[i];
+        }
+        frameStats.addStageNanos(VisionStage.CONVERT, System.nanoTime() - startTime);
+        coarsePipeline.convert(coarseImage);
+        List<List<RotatedRect>> coarseRectangles = processBands(coarsePipeline, coarseImage, coarseImage.width(), true);
+
+        List<Rect> regions = new ArrayList<>();
+        double scale = (double) image.width() / coarseImage.width();
+        for (List<RotatedRect> rectangles : coarseRectangles) {
+            for (RotatedRect rectangle : rectangles) {
+                addRefineRegion(regions, rectangle, scale, image.width(), image.height());
+            }
+        }
+        LOG_REGIONS.log(regions.size());
+
+        List<List<RotatedRect>> bandRectangles = new ArrayList<>(hsl.length);
+        for (int i = 0; i < hsl.length; i++) {
+            bandRectangles.add(new ArrayList<>());
+        }
+        for (Rect region : regions) {
+            multiBandPipeline.convert(image, region);
+            List<List<RotatedRect>> regionRectangles = processBands(multiBandPipeline, image, image.width(), false);
+            for (int i = 0; i < hsl.length; i++) {
+                bandRectangles.get(i).addAll(regionRectangles.get(i));
+            }
+        }
+        return bandRectangles;
+    }
+
+    /**
+     * Adds the full resolution region around a coarse rectangle, merging it with any region it
+     * overlaps so that no part of the image is searched twice.
+     */
+    private void addRefineRegion(List<Rect> regions, RotatedRect rectangle, double scale, int width, int height) {
+        // One extra coarse pixel covers the blur pyrDown adds to the edges
+        double padding = HatchTarget.getLongSide(rectangle.size) * REFINE_PADDING + 1;
+        double halfWidth = HatchTarget.getHalfWidth(rectangle) + padding;
+        double halfHeight = HatchTarget.getHalfHeight(rectangle) + padding;
+        int minX = Math.max(0, (int) ((rectangle.center.x - halfWidth) * scale));
+        int minY = Math.max(0, (int) ((rectangle.center.y - halfHeight) * scale));
+        int maxX = Math.min(width, (int) Math.ceil((rectangle.center.x + halfWidth) * scale));
+        int maxY = Math.min(height, (int) Math.ceil((rectangle.center.y + halfHeight) * scale));
+
+        for (int i = 0; i < regions.size(); i++) {
+            Rect region = regions.get(i);
+            boolean overlaps = (minX < region.x + region.width) && (region.x < maxX) &&
+                    (minY < region.y + region.height) && (region.y < maxY);
+            if (overlaps) {
+                minX = Math.min(minX, region.x);
+                minY = Math.min(minY, region.y);
+                maxX = Math.max(maxX, region.x + region.width);
+                maxY = Math.max(maxY, region.y + region.height);
+                regions.remove(i);
+                // The merged region may now overlap regions already checked
+                i = -1;
+            }
+        }
+        if ((maxX > minX) && (maxY > minY)) {
+            regions.add(new Rect(minX, minY, maxX - minX, maxY - minY));
+        }
+    }
+
+    private List<List<RotatedRect>> processBands(MultiBandPipeline pipeline, Mat image, int imageWidth, boolean coarse) {
+        if (parallel) {
+            return processBandsInParallel(pipeline, image, imageWidth, coarse);
+        }
+
+        List<List<RotatedRect>> bandRectangles = new ArrayList<>(hsl.length);
+        for (int i = 0;i < hsl.length;i++) {
+            bandRectangles.add(process(pipeline, image, i, imageWidth, coarse));
+        }
+        return bandRectangles;
+    }
+
+    private List<List<RotatedRect>> processBandsInParallel(MultiBandPipeline pipeline, Mat image, int imageWidth,
+                                                           boolean coarse) {
+        // The calling thread works on the first band while the pool works on the others
+        List<ForkJoinTask<List<RotatedRect>>> tasks = new ArrayList<>(hsl.length);
+        for (int i = 1;i < hsl.length;i++) {
+            int band = i;
+            tasks.add(VisionWorkerPool.get().submit(() -> process(pipeline, image, band, imageWidth, coarse)));
+        }
+
+        List<List<RotatedRect>> bandRectangles = new ArrayList<>(hsl.length);
+        bandRectangles.add(process(pipeline, image, 0, imageWidth, coarse));
+        for (ForkJoinTask<List<RotatedRect>> task : tasks) {
+            bandRectangles.add(task.join());
+        }
+        return bandRectangles;
+    }
+
+    /**
+     * Finds the rectangles for one band, either from a multi-band pipeline that has already
+     * converted the image or, when the pipeline is null, from a separate GRIP pipeline.
+     */
+    private List<RotatedRect> process(MultiBandPipeline pipeline, Mat image, int band, int imageWidth, boolean coarse) {
         long startTime = System.currentTimeMillis();
-        List<MatOfPoint> contours = executePipeline(image, minHue, minSaturation, minLuminance);
-        double imageNormalizationFactor = image.width() / NORMALIZED_WIDTH;
-        List<RotatedRect> rotatedRects = processPipelineOutputs(contours,
-                MIN_LONG_SIDE * imageNormalizationFactor,
-                MAX_LONG_SIDE * imageNormalizationFactor, TARGET_RATIO,
-                TARGET_RATIO_OFFSET);
-        log("Pipeline ran in %s milliseconds", System.currentTimeMillis() - startTime);
+        List<MatOfPoint> contours;
+        if (pipeline != null) {
+            pipeline.processBand(band);
+            contours = pipeline.findContoursOutput(band);
+        } else {
+            // The GRIP pipeline converts, thresholds and finds contours in one step
+            long pipelineStartTime = System.nanoTime();
+            contours = executePipeline(image, band);
+            frameStats.addStageNanos(VisionStage.THRESHOLD, System.nanoTime() - pipelineStartTime);
+        }
+        frameStats.addContours(contours.size());
+        long filterStartTime = System.nanoTime();
+        MatOfPoint2f contourPoints = pooledBuffers ? buffers.contourPoints(band) : null;
+        double imageNormalizationFactor = imageWidth / NORMALIZED_WIDTH;
+        // Edges are less precise on a reduced image, so coarse candidates are let through loosely
+        double sizeTolerance = coarse ? COARSE_SIZE_TOLERANCE : 1;
+        double ratioTolerance = coarse ? COARSE_RATIO_TOLERANCE : 1;
+        List<RotatedRect> rotatedRects = processPipelineOutputs(contours, contourPoints,
+                MIN_LONG_SIDE * imageNormalizationFactor / sizeTolerance,
+                MAX_LONG_SIDE * imageNormalizationFactor * sizeTolerance, TARGET_RATIO,
+                TARGET_RATIO_OFFSET * ratioTolerance);
+        frameStats.addStageNanos(VisionStage.FILTER, System.nanoTime() - filterStartTime);
+        LOG_PIPELINE_TIME.log(System.currentTimeMillis() - startTime);
         return rotatedRects;
     }
 
-    private List<MatOfPoint> executePipeline(Mat image, double minHue, double minSaturation, double minLuminance) {
-        GripPipeline gripPipeline = new GripPipeline();
-        gripPipeline.setMinHue(minHue);
-        gripPipeline.setMinSaturation(minSaturation);
-        gripPipeline.setMinLuminance(minLuminance);
+    private List<MatOfPoint> executePipeline(Mat image, int band) {
+        GripPipeline gripPipeline = pooledBuffers ? gripPipelines[band] : null;
+        if (gripPipeline == null) {
+            gripPipeline = new GripPipeline();
+            gripPipeline.setMinHue(hsl[band][0]);
+            gripPipeline.setMinSaturation(hsl[band][1]);
+            gripPipeline.setMinLuminance(hsl[band][2]);
+            gripPipeline.setExternalOnly(externalContours);
+            // Threshold output and contour hierarchy
+            VisionBuffers.countAllocations(2);
+            if (pooledBuffers) {
+                gripPipelines[band] = gripPipeline;
+            }
+        }
 
         gripPipeline.process(image);
 
         return gripPipeline.findContoursOutput();
     }
 
-    private List<RotatedRect> processPipelineOutputs(List<MatOfPoint> contours, double minLongSide, double maxLongSide,
+    private List<RotatedRect> processPipelineOutputs(List<MatOfPoint> contours, MatOfPoint2f contourPoints,
+                                                     double minLongSide, double maxLongSide,
                                                      double targetRatio, double targetRatioOffset) {
-        log("Found %s contours", contours.size());
+        LOG_CONTOURS.log(contours.size());
+
+        if (parallel && (contours.size() > PARALLEL_FILTER_MIN_CONTOURS)) {
+            ContourFilterTask task = new ContourFilterTask(contours, 0, contours.size(),
+                    minLongSide, maxLongSide, targetRatio, targetRatioOffset);
+            return (ForkJoinTask.getPool() == VisionWorkerPool.get()) ? task.invoke() : VisionWorkerPool.get().invoke(task);
+        }
 
         ArrayList<RotatedRect> filtered = new ArrayList<>();
-        for(MatOfPoint contour : contours) {
-            MatOfPoint2f matOfPoint2f = new MatOfPoint2f();
+        filterContours(contours, 0, contours.size(), contourPoints, minLongSide, maxLongSide,
+                targetRatio, targetRatioOffset, filtered);
+        return filtered;
+    }
+
+    private void filterContours(List<MatOfPoint> contours, int start, int end, MatOfPoint2f contourPoints,
+                                double minLongSide, double maxLongSide,
+                                double targetRatio, double targetRatioOffset, List<RotatedRect> filtered) {
+        double maxRatio = targetRatio + targetRatioOffset;
+        for (int i = start; i < end; i++) {
+            MatOfPoint contour = contours.get(i);
+            if (contourPrefilter && !passesPrefilter(contour, minLongSide, maxLongSide, maxRatio)) {
+                continue;
+            }
+            MatOfPoint2f matOfPoint2f = contourPoints;
+            if (matOfPoint2f == null) {
+                matOfPoint2f = new MatOfPoint2f();
+                VisionBuffers.countAllocations(1);
+            }
             contour.convertTo(matOfPoint2f, CvType.CV_32FC2);
             RotatedRect rr = Imgproc.minAreaRect(matOfPoint2f);
             double longSide = HatchTarget.getLongSide(rr.size);
@@ -97,8 +456,89 @@ public class HatchTargetRecognizer {
                 filtered.add(rr);
             }
         }
+    }
+
+    /**
+     * Rejects contours whose rotated rectangle cannot pass the size and ratio checks, from the
+     * cheapest test to the most expensive. Only the fill check, when selected, rejects contours
+     * that the rotated rectangle checks would accept.
+     */
+    private boolean passesPrefilter(MatOfPoint contour, double minLongSide, double maxLongSide, double maxRatio) {
+        if (contour.rows() < MIN_CONTOUR_POINTS) {
+            return false;
+        }
 
-        return filtered;
+        // The upright box is a pixel wider and taller than the extent of the points
+        Rect box = Imgproc.boundingRect(contour);
+        int boxSide = Math.max(box.width, box.height);
+        if ((boxSide * BOUNDING_BOX_DIAGONAL <= minLongSide) || ((boxSide - 1) >= maxLongSide * BOUNDING_BOX_DIAGONAL)) {
+            return false;
+        }
+
+        // A contour never has more area than its rectangle, and a rectangle that passes has less than this
+        double area = Imgproc.contourArea(contour);
+        double maxArea = maxLongSide * maxLongSide;
+        if (area >= maxArea) {
+            return false;
+        }
+        if (contourFillFilter) {
+            // The smallest rectangle that passes
+            double minArea = minLongSide * minLongSide / maxRatio;
+            return area >= minArea * MIN_CONTOUR_FILL;
+        }
+        return true;
+    }
+
+    /**
+     * Filters a range of a contour list, splitting it in half until the pieces are small enough
+     * to run on one worker. The halves are joined left then right to keep the contour order.
+     */
+    private class ContourFilterTask extends RecursiveTask<List<RotatedRect>> {
+        private final List<MatOfPoint> contours;
+        private final int start;
+        private final int end;
+        private final double minLongSide;
+        private final double maxLongSide;
+        private final double targetRatio;
+        private final double targetRatioOffset;
+
+        private ContourFilterTask(List<MatOfPoint> contours, int start, int end, double minLongSide,
+                                  double maxLongSide, double targetRatio, double targetRatioOffset) {
+            this.contours = contours;
+            this.start = start;
+            this.end = end;
+            this.minLongSide = minLongSide;
+            this.maxLongSide = maxLongSide;
+            this.targetRatio = targetRatio;
+            this.targetRatioOffset = targetRatioOffset;
+        }
+
+        @Override
+        protected List<RotatedRect> compute() {
+            if ((end - start) <= PARALLEL_FILTER_MIN_CONTOURS) {
+                ArrayList<RotatedRect> filtered = new ArrayList<>();
+                MatOfPoint2f contourPoints = pooledBuffers ? buffers.borrowContourPoints() : null;
+                try {
+                    filterContours(contours, start, end, contourPoints, minLongSide, maxLongSide,
+                            targetRatio, targetRatioOffset, filtered);
+                } finally {
+                    if (contourPoints != null) {
+                        buffers.returnContourPoints(contourPoints);
+                    }
+                }
+                return filtered;
+            }
+
+            int middle = (start + end) >>> 1;
+            ContourFilterTask left = new ContourFilterTask(contours, start, middle,
+                    minLongSide, maxLongSide, targetRatio, targetRatioOffset);
+            ContourFilterTask right = new ContourFilterTask(contours, middle, end,
+                    minLongSide, maxLongSide, targetRatio, targetRatioOffset);
+            right.fork();
+            List<RotatedRect> filtered = left.compute();
+            filtered.addAll(right.join());
+            return filtered;
+        }
     }
 
     private boolean inRatioRange(double ratio, double target, double offset) {
@@ -110,24 +550,52 @@ public class HatchTargetRecognizer {
         return (ratio > lower) && (ratio < upper);
     }
 
-    private List<HatchTarget> findHatchTargets(List<RotatedRect> targets) {
-        ArrayList<HatchTarget> hatchTargets = new ArrayList<>();
-
-        int innerEnd = targets.size();
-        int outerEnd = innerEnd - 1;
-        for (int i = 0; i < outerEnd; i++) {
-            for (int j = i + 1; j < innerEnd; j ++) {
-                boolean isHatchTarget = isHatchTarget(targets.get(i), targets.get(j));
-                if (isHatchTarget) {
-                    hatchTargets.add(new HatchTarget(targets.get(i), targets.get(j)));
+    /**
+     * Pairs rectangles that form a hatch target. The rectangles are swept in order of center x
+     * so each one is only compared with those inside the pairing x distance. Pairs are returned
+     * in the order of their rectangle indexes, the same order as comparing every pair.
+     */
+    static List<HatchTarget> findHatchTargets(List<RotatedRect> targets) {
+        int size = targets.size();
+        Integer[] byCenterX = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            byCenterX[i] = i;
+        }
+        Arrays.sort(byCenterX, Comparator.comparingDouble(i -> targets.get(i).center.x));
+
+        long[] pairs = new long[Math.max(size, 4)];
+        int pairCount = 0;
+        for (int a = 0; a < size - 1; a++) {
+            int i = byCenterX[a];
+            double centerX = targets.get(i).center.x;
+            for (int b = a + 1; b < size; b++) {
+                int j = byCenterX[b];
+                double centerXDifference = targets.get(j).center.x - centerX;
+                if (centerXDifference >= RECTANGLE_PAIR_MAX_X_DIFFERENCE) {
+                    break;
+                }
+                if ((centerXDifference > RECTANGLE_PAIR_MIN_X_DIFFERENCE) &&
+                        isHatchTarget(targets.get(Math.min(i, j)), targets.get(Math.max(i, j)))) {
+                    if (pairCount == pairs.length) {
+                        pairs = Arrays.copyOf(pairs, pairCount * 2);
+                    }
+                    pairs[pairCount++] = ((long) Math.min(i, j) << 32) | Math.max(i, j);
                 }
             }
         }
+        Arrays.sort(pairs, 0, pairCount);
+
+        ArrayList<HatchTarget> hatchTargets = new ArrayList<>(pairCount);
+        for (int p = 0; p < pairCount; p++) {
+            int i = (int) (pairs[p] >>> 32);
+            int j = (int) pairs[p];
+            hatchTargets.add(new HatchTarget(targets.get(i), targets.get(j)));
+        }
 
         return hatchTargets;
     }
 
-    private boolean isHatchTarget(RotatedRect rr1, RotatedRect rr2) {
+    private static boolean isHatchTarget(RotatedRect rr1, RotatedRect rr2) {
         Point center1 = rr1.center;
         Point center2 = rr2.center;
 
@@ -145,45 +613,34 @@ public class HatchTargetRecognizer {
         return isYPlaneInRange && isXPlaneInRange && isSimilarSizes && isValidAngles;
     }
 
-    private boolean isValidAngle(RotatedRect rotatedRect) {
+    private static boolean isValidAngle(RotatedRect rotatedRect) {
         double absAngle = Math.abs(rotatedRect.angle);
         return (absAngle > MIN_ANGLE) && (absAngle < MAX_ANGLE);
     }
 
-    private List<HatchTarget> filterSameHatchTargets(List<HatchTarget> targets) {
-        if (targets.size() < 2) {
+    /**
+     * Drops every target whose midpoint is close enough to the first target's to be the same
+     * target, keeping the rest in their original order. The first target never changes, so one
+     * pass gives the same result as repeating the pass until nothing more is dropped.
+     */
+    static List<HatchTarget> filterSameHatchTargets(List<HatchTarget> targets) {
+        int size = targets.size();
+        if (size < 2) {
             return targets;
         }
 
-        ArrayList<HatchTarget> currentTargets = new ArrayList<>(targets);
-        while (true) {
-            ArrayList<HatchTarget> newTargets = new ArrayList<>();
-            HatchTarget singleTarget = currentTargets.get(0);
-            newTargets.add(singleTarget);
-            for (int i = 1; i < currentTargets.size(); i++) {
-                if (!isSameHatchTarget(singleTarget, currentTargets.get(i))) {
-                    newTargets.add(currentTargets.get(i));
-                }
-            }
-            if (currentTargets.size() == newTargets.size()) {
-                break;
+        HatchTarget firstTarget = targets.get(0);
+        ArrayList<HatchTarget> filtered = new ArrayList<>(size);
+        filtered.add(firstTarget);
+        for (int i = 1; i < size; i++) {
+            if (!isSameHatchTarget(firstTarget, targets.get(i))) {
+                filtered.add(targets.get(i));
             }
-            currentTargets = newTargets;
         }
-
-        return currentTargets;
-    }
-
-    private boolean isSameHatchTarget(HatchTarget ht1, HatchTarget ht2) {
-        double midpoint1 = ht1.getMidPoint();
-        double midpoint2 = ht2.getMidPoint();
-
-        return Math.abs(midpoint1 - midpoint2) < 10;
+        return filtered;
     }
 
-    private void log(String message, Object... args) {
-        if (VERBOSE) {
-            System.out.println(String.format(message, args));
-        }
+    private static boolean isSameHatchTarget(HatchTarget ht1, HatchTarget ht2) {
+        return Math.abs(ht1.getMidPoint() - ht2.getMidPoint()) < SAME_TARGET_MAX_MIDPOINT_DIFFERENCE;
     }
 }
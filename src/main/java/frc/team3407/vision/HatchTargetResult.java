@@ -0,0 +1,152 @@
+package frc.team3407.vision;
+
+import edu.wpi.first.networktables.NetworkTablesJNI;
+
+/**
+ * The tracked hatch target after one frame, together with the running totals of the pipeline.
+ * Results never change once created, so they can be handed from the vision thread to any number
+ * of readers without locking, and everything computed from one is consistent with one frame.
+ */
+public final class HatchTargetResult {
+
+    private final double offset;
+    private final boolean hasTarget;
+    private final double offsetVelocity;
+    private final int width;
+    private final int staleCount;
+    private final int hits;
+    private final long count;
+    private final long duration;
+    private final long captureTime;
+    private final long captureDelay;
+    private final long grabTime;
+
+    HatchTargetResult(double offset, boolean hasTarget, double offsetVelocity, int width, int staleCount, int hits,
+                      long count, long duration, long captureTime, long captureDelay, long grabTime) {
+        this.offset = offset;
+        this.hasTarget = hasTarget;
+        this.offsetVelocity = offsetVelocity;
+        this.width = width;
+        this.staleCount = staleCount;
+        this.hits = hits;
+        this.count = count;
+        this.duration = duration;
+        this.captureTime = captureTime;
+        this.captureDelay = captureDelay;
+        this.grabTime = grabTime;
+    }
+
+    /**
+     * The result before the first frame, without a target.
+     */
+    static HatchTargetResult none(int width) {
+        return new HatchTargetResult(0, false, 0, width, 0, 0, 0, 0, 0, 0, 0);
+    }
+
+    /**
+     * Pixels from the center of the frame to the target, or the frame width without a target.
+     */
+    public double getOffset() {
+        return offset;
+    }
+
+    public boolean hasTarget() {
+        return hasTarget;
+    }
+
+    /**
+     * How fast the offset is changing in pixels per second.
+     */
+    public double getOffsetVelocity() {
+        return offsetVelocity;
+    }
+
+    /**
+     * The width of the processed frames in pixels.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    public int getStaleCount() {
+        return staleCount;
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    /**
+     * Frames processed so far, which also numbers the results.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Milliseconds spent processing all frames so far.
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * When the frame was captured in microseconds on the wpilib clock of this process, or 0 before
+     * the first frame. cscore and the network tables share that clock; results read from the
+     * network tables estimate it from the published latency.
+     */
+    public long getCaptureTime() {
+        return captureTime;
+    }
+
+    /**
+     * Microseconds from capture until the frame was grabbed.
+     */
+    public long getCaptureDelay() {
+        return captureDelay;
+    }
+
+    /**
+     * When the frame was grabbed, on the {@code System.nanoTime()} clock.
+     */
+    public long getGrabTime() {
+        return grabTime;
+    }
+
+    /**
+     * Seconds from capture to the given wpilib time in microseconds, 0 before the first frame.
+     */
+    public double getAge(long now) {
+        if (captureTime == 0) {
+            return 0;
+        }
+        return Math.max(0, now - captureTime) / 1000000.0;
+    }
+
+    /**
+     * Seconds since the frame was captured.
+     */
+    public double getAge() {
+        return getAge(NetworkTablesJNI.now());
+    }
+
+    /**
+     * The offset moved forward to the given wpilib time in microseconds, using how fast it was
+     * changing between the last hits. Never projects further than
+     * {@link HatchTargetSource#MAX_PROJECTION_SECONDS}.
+     */
+    public double getProjectedOffset(long now) {
+        if (!hasTarget) {
+            return offset;
+        }
+        double age = Math.min(getAge(now), HatchTargetSource.MAX_PROJECTION_SECONDS);
+        return offset + (offsetVelocity * age);
+    }
+
+    /**
+     * The offset moved forward to now.
+     */
+    public double getProjectedOffset() {
+        return getProjectedOffset(NetworkTablesJNI.now());
+    }
+}
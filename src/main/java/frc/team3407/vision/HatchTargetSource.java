@@ -0,0 +1,63 @@
+package frc.team3407.vision;
+
+/**
+ * The latest hatch target result, either straight from a {@link HatchTargetPipeline} running in
+ * the robot code or as published to the network tables by one running elsewhere.
+ */
+public interface HatchTargetSource {
+
+    // Never project further ahead than this, an old offset is better left alone
+    double MAX_PROJECTION_SECONDS = 0.5;
+
+    /**
+     * The latest result. Read it once and compute everything from it to use the values of a
+     * single frame; the other methods each read a new one.
+     */
+    HatchTargetResult getResult();
+
+    default boolean hasTarget() {
+        return getResult().hasTarget();
+    }
+
+    /**
+     * Pixels from the center of the image to the target as measured in the last processed frame.
+     */
+    default double getOffset() {
+        return getResult().getOffset();
+    }
+
+    /**
+     * How fast the offset is changing in pixels per second.
+     */
+    default double getOffsetVelocity() {
+        return getResult().getOffsetVelocity();
+    }
+
+    /**
+     * The width of the processed frames in pixels.
+     */
+    default int getWidth() {
+        return getResult().getWidth();
+    }
+
+    /**
+     * The number of frames processed, which changes with every new result.
+     */
+    default long getCount() {
+        return getResult().getCount();
+    }
+
+    /**
+     * Seconds since the frame of the last result was captured.
+     */
+    default double getAge() {
+        return getResult().getAge();
+    }
+
+    /**
+     * The offset moved forward to now using how fast it was changing between the last hits.
+     */
+    default double getProjectedOffset() {
+        return getResult().getProjectedOffset();
+    }
+}
@@ -0,0 +1,82 @@
+package frc.team3407.vision;
+
+/**
+ * A histogram of nanosecond durations with fixed buckets, so recording never allocates.
+ *
+ * <p>Durations under 16 ns have a bucket each. Above that every power of two is split into
+ * eight buckets, which keeps percentiles within 12.5% of the recorded value from nanoseconds
+ * up to about a minute.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_VALUE_BITS = 36;
+    private static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+    private static final int BUCKET_COUNT = bucketIndex(MAX_VALUE) + 1;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long count = 0;
+    private long max = 0;
+
+    public void record(long nanos) {
+        long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+        counts[bucketIndex(value)]++;
+        count++;
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * The smallest recorded duration that the given percentage of durations do not exceed,
+     * rounded up to the end of its bucket. Zero when nothing has been recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil((percentile / 100.0) * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = 0;
+        }
+        count = 0;
+        max = 0;
+    }
+
+    private static int bucketIndex(long value) {
+        if (value < (SUB_BUCKET_COUNT << 1)) {
+            return (int) value;
+        }
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+        return (shift * SUB_BUCKET_COUNT) + (int) (value >>> shift);
+    }
+
+    private static long bucketUpperBound(int index) {
+        if (index < (SUB_BUCKET_COUNT << 1)) {
+            return index;
+        }
+        int shift = (index / SUB_BUCKET_COUNT) - 1;
+        long mantissa = (index % SUB_BUCKET_COUNT) + SUB_BUCKET_COUNT;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
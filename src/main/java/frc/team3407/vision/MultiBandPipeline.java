@@ -0,0 +1,162 @@
+package frc.team3407.vision;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the same HSL threshold and find contours steps as {@link GripPipeline} for several
+ * threshold bands, but converts the source image to HLS only once per frame.
+ *
+ * <p>Each band is given as {min hue, min saturation, min luminance}, the same order as
+ * the rows used by {@link HatchTargetRecognizer}. The upper limits are the full range.
+ * The image buffers come from a {@link VisionBuffers} pool and are reused every frame; the
+ * contours are allocated by OpenCV every frame and counted by the pool.
+ */
+public class MultiBandPipeline {
+
+    private static final double MAX_HUE = 180.0;
+    private static final double MAX_SATURATION = 255.0;
+    private static final double MAX_LUMINANCE = 255.0;
+
+    private final Scalar[] lowerBounds;
+    private final Scalar upperBound = new Scalar(MAX_HUE, MAX_LUMINANCE, MAX_SATURATION);
+
+    private final VisionBuffers buffers;
+    private Rect region;
+    private Mat hlsInput;
+    private final Point regionOffset = new Point(0, 0);
+    private FrameStats frameStats;
+    private int contourMode = Imgproc.RETR_LIST;
+
+    //Outputs
+    private final List<ArrayList<MatOfPoint>> findContoursOutputs = new ArrayList<>();
+
+    public MultiBandPipeline(double[][] bands) {
+        this(bands, new VisionBuffers(bands.length));
+    }
+
+    public MultiBandPipeline(double[][] bands, VisionBuffers buffers) {
+        this.buffers = buffers;
+        lowerBounds = new Scalar[bands.length];
+        for (int i = 0; i < bands.length; i++) {
+            // OpenCV orders the HLS channels as hue, luminance, saturation
+            lowerBounds[i] = new Scalar(bands[i][0], bands[i][2], bands[i][1]);
+            findContoursOutputs.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Adds the time spent in each stage to the given stats.
+     */
+    public void setFrameStats(FrameStats frameStats) {
+        this.frameStats = frameStats;
+    }
+
+    /**
+     * Selects whether only outer contours are found, leaving out contours nested inside others.
+     */
+    public void setExternalOnly(boolean externalOnly) {
+        contourMode = externalOnly ? Imgproc.RETR_EXTERNAL : Imgproc.RETR_LIST;
+    }
+
+    /**
+     * Converts the image once and then thresholds and finds contours for every band.
+     */
+    public void process(Mat source0) {
+        convert(source0);
+        for (int i = 0; i < lowerBounds.length; i++) {
+            processBand(i);
+        }
+    }
+
+    /**
+     * Converts the source image to HLS. Must be called before {@link #processBand(int)}.
+     */
+    public void convert(Mat source0) {
+        convert(source0, null);
+    }
+
+    /**
+     * Converts only a region of the source image to HLS. Contours found for the region are in
+     * the coordinates of the whole image. A null region converts the whole image.
+     */
+    public void convert(Mat source0, Rect region) {
+        long startTime = System.nanoTime();
+        buffers.ensureSize(source0.width(), source0.height());
+        this.region = region;
+        if (region == null) {
+            regionOffset.x = 0;
+            regionOffset.y = 0;
+            hlsInput = buffers.hls();
+            Imgproc.cvtColor(source0, hlsInput, Imgproc.COLOR_BGR2HLS);
+        } else {
+            regionOffset.x = region.x;
+            regionOffset.y = region.y;
+            hlsInput = buffers.hlsRegion(region);
+            Imgproc.cvtColor(buffers.sourceRegion(source0, region), hlsInput, Imgproc.COLOR_BGR2HLS);
+        }
+        addStageNanos(VisionStage.CONVERT, startTime);
+    }
+
+    /**
+     * Thresholds the last converted image with a single band and finds its contours.
+     */
+    public void processBand(int band) {
+        Mat thresholdOutput = (region == null) ? buffers.threshold(band) : buffers.thresholdRegion(band, region);
+        long startTime = System.nanoTime();
+        Core.inRange(hlsInput, lowerBounds[band], upperBound, thresholdOutput);
+        startTime = addStageNanos(VisionStage.THRESHOLD, startTime);
+        findContours(thresholdOutput, buffers.hierarchy(band), findContoursOutputs.get(band));
+        addStageNanos(VisionStage.CONTOURS, startTime);
+    }
+
+    public int getBandCount() {
+        return lowerBounds.length;
+    }
+
+    public Mat hlsOutput() {
+        return hlsInput;
+    }
+
+    public Mat thresholdOutput(int band) {
+        return buffers.threshold(band);
+    }
+
+    /**
+     * The contours found for a band. They are released when the band is processed again.
+     */
+    public ArrayList<MatOfPoint> findContoursOutput(int band) {
+        return findContoursOutputs.get(band);
+    }
+
+    /**
+     * Releases the contours of every band and the pooled buffers.
+     */
+    public void release() {
+        for (ArrayList<MatOfPoint> contours : findContoursOutputs) {
+            VisionBuffers.releaseContours(contours);
+        }
+        buffers.release();
+    }
+
+    private long addStageNanos(VisionStage stage, long startTime) {
+        long endTime = System.nanoTime();
+        if (frameStats != null) {
+            frameStats.addStageNanos(stage, endTime - startTime);
+        }
+        return endTime;
+    }
+
+    private void findContours(Mat input, Mat hierarchy, List<MatOfPoint> contours) {
+        VisionBuffers.findContours(input, contours, hierarchy, contourMode, Imgproc.CHAIN_APPROX_SIMPLE,
+                regionOffset);
+    }
+}
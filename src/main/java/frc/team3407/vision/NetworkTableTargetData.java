@@ -4,38 +4,198 @@ import edu.wpi.first.networktables.NetworkTable;
 import edu.wpi.first.networktables.NetworkTableEntry;
 import edu.wpi.first.networktables.NetworkTableInstance;
 
+/**
+ * Publishes the hatch target results of a pipeline.
+ *
+ * <p>Every result is written as one packed double array, {@code result}, led by the frame
+ * count as a sequence number, so readers always see the values of a single frame. The network
+ * tables are flushed right after, instead of waiting up to 100 ms for the periodic update; the
+ * flush rate can be capped. The individual entries are still written for the dashboard unless
+ * turned off.
+ */
 public class NetworkTableTargetData {
 
-    private static final String VISION_TABLE_HATCH = "Vision_Hatch";
-    private static final String OFFSET_NAME = "offset";
-    private static final String HITS_NAME = "hits";
-    private static final String COUNT_NAME = "count";
-    private static final String AVERAGE_TIME_NAME = "timing";
-    private static final String STALE_NAME = "stale";
+    static final String VISION_TABLE_HATCH = "Vision_Hatch";
+    static final String OFFSET_NAME = "offset";
+    static final String HAS_TARGET_NAME = "hasTarget";
+    static final String HITS_NAME = "hits";
+    static final String COUNT_NAME = "count";
+    static final String AVERAGE_TIME_NAME = "timing";
+    static final String STALE_NAME = "stale";
+    static final String ALLOCATIONS_NAME = "allocations";
+    static final String CONTOUR_ALLOCATIONS_NAME = "contourAllocations";
+    static final String CAPTURE_TIME_NAME = "captureTime";
+    static final String LATENCY_NAME = "latency";
+    static final String VELOCITY_NAME = "velocity";
+    static final String FRAMES_PER_SECOND_NAME = "fps";
+    static final String WIDTH_NAME = "width";
+    static final String STAGES_TABLE = "stages";
+    static final String[] PERCENTILE_NAMES = {"p50", "p95", "p99"};
+    static final String MAX_NAME = "max";
+    static final String RESULT_NAME = "result";
+
+    // Positions in the packed result
+    static final int RESULT_SEQUENCE = 0;
+    static final int RESULT_OFFSET = 1;
+    static final int RESULT_HAS_TARGET = 2;
+    static final int RESULT_VELOCITY = 3;
+    static final int RESULT_WIDTH = 4;
+    static final int RESULT_CAPTURE_TIME = 5;
+    static final int RESULT_LATENCY = 6;
+    static final int RESULT_HITS = 7;
+    static final int RESULT_STALE = 8;
+    static final int RESULT_LENGTH = 9;
+
+    private final NetworkTableInstance root;
+    private NetworkTableEntry resultEntry;
+    private final double[] result = new double[RESULT_LENGTH];
 
     private NetworkTableEntry offsetEntry;
+    private NetworkTableEntry hasTargetEntry;
     private NetworkTableEntry hitsEntry;
     private NetworkTableEntry countEntry;
     private NetworkTableEntry timingEntry;
     private NetworkTableEntry staleEntry;
+    private NetworkTableEntry allocationsEntry;
+    private NetworkTableEntry contourAllocationsEntry;
+    private NetworkTableEntry captureTimeEntry;
+    private NetworkTableEntry latencyEntry;
+    private NetworkTableEntry velocityEntry;
+    private NetworkTableEntry framesPerSecondEntry;
+    private NetworkTableEntry widthEntry;
+    private NetworkTableEntry[][] stagePercentileEntries;
+    private NetworkTableEntry[] stageMaxEntries;
+
+    private int width = 0;
+    private boolean individualEntries = true;
+    private boolean flushOnPublish = true;
+    private long minFlushIntervalNanos = 0;
+    private long lastFlushNanos = 0;
 
     public NetworkTableTargetData() {
-        NetworkTableInstance root = NetworkTableInstance.getDefault();
-        NetworkTable table = root.getTable(VISION_TABLE_HATCH);
+        this(VISION_TABLE_HATCH);
+    }
+
+    public NetworkTableTargetData(String tableName) {
+        root = NetworkTableInstance.getDefault();
+        NetworkTable table = root.getTable(tableName);
+        resultEntry = table.getEntry(RESULT_NAME);
         offsetEntry = table.getEntry(OFFSET_NAME);
+        hasTargetEntry = table.getEntry(HAS_TARGET_NAME);
         hitsEntry = table.getEntry(HITS_NAME);
         countEntry = table.getEntry(COUNT_NAME);
         timingEntry = table.getEntry(AVERAGE_TIME_NAME);
         staleEntry = table.getEntry(STALE_NAME);
+        allocationsEntry = table.getEntry(ALLOCATIONS_NAME);
+        contourAllocationsEntry = table.getEntry(CONTOUR_ALLOCATIONS_NAME);
+        captureTimeEntry = table.getEntry(CAPTURE_TIME_NAME);
+        latencyEntry = table.getEntry(LATENCY_NAME);
+        velocityEntry = table.getEntry(VELOCITY_NAME);
+        framesPerSecondEntry = table.getEntry(FRAMES_PER_SECOND_NAME);
+        widthEntry = table.getEntry(WIDTH_NAME);
+
+        // Stage latencies go in Vision_Hatch/stages/<stage>/<percentile>
+        NetworkTable stagesTable = table.getSubTable(STAGES_TABLE);
+        stagePercentileEntries = new NetworkTableEntry[StageLatencies.HISTOGRAM_COUNT][PERCENTILE_NAMES.length];
+        stageMaxEntries = new NetworkTableEntry[StageLatencies.HISTOGRAM_COUNT];
+        for (int i = 0; i < StageLatencies.HISTOGRAM_COUNT; i++) {
+            NetworkTable stageTable = stagesTable.getSubTable(StageLatencies.getLabel(i));
+            for (int p = 0; p < PERCENTILE_NAMES.length; p++) {
+                stagePercentileEntries[i][p] = stageTable.getEntry(PERCENTILE_NAMES[p]);
+            }
+            stageMaxEntries[i] = stageTable.getEntry(MAX_NAME);
+        }
+    }
+
+    /**
+     * Publishes the width of the frames, which the offset is measured against.
+     */
+    public void setWidth(int width) {
+        this.width = width;
+        widthEntry.setDouble(width);
+    }
+
+    /**
+     * Selects whether the individual entries are written next to the packed result.
+     */
+    public void setIndividualEntries(boolean individualEntries) {
+        this.individualEntries = individualEntries;
+    }
+
+    /**
+     * Selects whether the network tables are flushed after every result.
+     */
+    public void setFlushOnPublish(boolean flushOnPublish) {
+        this.flushOnPublish = flushOnPublish;
+    }
+
+    /**
+     * Caps how often results are flushed. Results in between go out with the next flush or the
+     * periodic update. Zero, the default, flushes every result.
+     */
+    public void setMaxFlushRate(double flushesPerSecond) {
+        minFlushIntervalNanos = (flushesPerSecond > 0) ? (long) (1000000000L / flushesPerSecond) : 0;
+    }
+
+    /**
+     * @param captureTime cscore capture time of the frame in microseconds
+     * @param latency milliseconds from frame capture until now
+     * @param offsetVelocity how fast the offset is changing in pixels per second
+     */
+    public void update(double offset, boolean hasTarget, int staleCount, int hits, long count, long duration,
+                       long captureTime, double latency, double offsetVelocity) {
+        result[RESULT_SEQUENCE] = count;
+        result[RESULT_OFFSET] = offset;
+        result[RESULT_HAS_TARGET] = hasTarget ? 1 : 0;
+        result[RESULT_VELOCITY] = offsetVelocity;
+        result[RESULT_WIDTH] = width;
+        result[RESULT_CAPTURE_TIME] = captureTime;
+        result[RESULT_LATENCY] = latency;
+        result[RESULT_HITS] = hits;
+        result[RESULT_STALE] = staleCount;
+        resultEntry.setDoubleArray(result);
+
+        if (individualEntries) {
+            updateEntries(offset, hasTarget, staleCount, hits, count, duration, captureTime, latency,
+                    offsetVelocity);
+        }
+
+        if (flushOnPublish) {
+            long now = System.nanoTime();
+            if ((minFlushIntervalNanos == 0) || ((now - lastFlushNanos) >= minFlushIntervalNanos)) {
+                root.flush();
+                lastFlushNanos = now;
+            }
+        }
     }
 
-    public void update(double offset, int staleCount, int hits, long count, long duration) {
+    private void updateEntries(double offset, boolean hasTarget, int staleCount, int hits, long count,
+                               long duration, long captureTime, double latency, double offsetVelocity) {
         offsetEntry.setDouble(offset);
+        hasTargetEntry.setBoolean(hasTarget);
+        velocityEntry.setDouble(offsetVelocity);
+        captureTimeEntry.setDouble(captureTime);
+        latencyEntry.setDouble(latency);
         hitsEntry.setNumber(hits);
         countEntry.setNumber(count);
         if (count > 0) {
             timingEntry.setNumber(duration / count);
         }
         staleEntry.setNumber(staleCount);
+        allocationsEntry.setNumber(VisionBuffers.getNativeAllocations());
+        contourAllocationsEntry.setNumber(VisionBuffers.getContourAllocations());
+    }
+
+    /**
+     * Publishes the latest window of stage latencies in milliseconds and the frame rate.
+     */
+    public void updateStageLatencies(StageLatencies stageLatencies) {
+        for (int i = 0; i < StageLatencies.HISTOGRAM_COUNT; i++) {
+            for (int p = 0; p < PERCENTILE_NAMES.length; p++) {
+                stagePercentileEntries[i][p].setDouble(stageLatencies.getPercentileNanos(i, p) / 1000000.0);
+            }
+            stageMaxEntries[i].setDouble(stageLatencies.getMaxNanos(i) / 1000000.0);
+        }
+        framesPerSecondEntry.setDouble(stageLatencies.getFramesPerSecond());
     }
 }
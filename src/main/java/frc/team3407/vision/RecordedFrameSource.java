@@ -0,0 +1,105 @@
+package frc.team3407.vision;
+
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * Frames read from a directory of images or from a video file, for running the vision code
+ * away from the robot. Images are read in file name order.
+ */
+public class RecordedFrameSource {
+
+    private static final String[] IMAGE_EXTENSIONS = {".png", ".jpg", ".jpeg", ".bmp"};
+
+    private final File[] images;
+    private final VideoCapture videoCapture;
+    private final double framesPerSecond;
+
+    private int frameIndex = -1;
+    private String name;
+    private long timestamp;
+
+    /**
+     * Opens a directory of images or a video file. Images have no capture time, so they are
+     * given timestamps as if they had been captured at the given rate.
+     */
+    public RecordedFrameSource(File input, double framesPerSecond) {
+        this.framesPerSecond = framesPerSecond;
+        if (input.isDirectory()) {
+            images = input.listFiles(RecordedFrameSource::isImage);
+            if ((images == null) || (images.length == 0)) {
+                throw new IllegalArgumentException("No images found in " + input);
+            }
+            Arrays.sort(images);
+            videoCapture = null;
+        } else {
+            images = null;
+            videoCapture = new VideoCapture(input.getPath());
+            if (!videoCapture.isOpened()) {
+                throw new IllegalArgumentException("Unable to open video " + input);
+            }
+        }
+    }
+
+    /**
+     * Reads the next frame into the given Mat. Returns false when there are no more frames.
+     */
+    public boolean next(Mat frame) {
+        frameIndex++;
+        if (images != null) {
+            if (frameIndex >= images.length) {
+                return false;
+            }
+            Mat image = Imgcodecs.imread(images[frameIndex].getPath());
+            if ((image == null) || image.empty()) {
+                throw new IllegalStateException("Unable to read image " + images[frameIndex]);
+            }
+            image.copyTo(frame);
+            image.release();
+            name = images[frameIndex].getName();
+            timestamp = (long) (frameIndex * 1000000.0 / framesPerSecond);
+        } else {
+            if (!videoCapture.read(frame) || frame.empty()) {
+                return false;
+            }
+            name = Integer.toString(frameIndex);
+            timestamp = (long) (videoCapture.get(Videoio.CAP_PROP_POS_MSEC) * 1000.0);
+        }
+        return true;
+    }
+
+    /**
+     * The file name of the last image, or the frame number within a video.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * The capture time of the last frame in microseconds from the first frame.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void close() {
+        if (videoCapture != null) {
+            videoCapture.release();
+        }
+    }
+
+    private static boolean isImage(File file) {
+        String fileName = file.getName().toLowerCase();
+        for (String extension : IMAGE_EXTENSIONS) {
+            if (fileName.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,277 @@
+package frc.team3407.vision;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs recorded frames through the hatch target recognizer and the stale and offset tracking of
+ * {@link HatchTargetPipeline} as fast as possible, without a robot, camera or network tables.
+ *
+ * <pre>
+ * ReplayRunner &lt;image directory or video&gt; [--out frames.csv] [--threads N] [--pyramid L]
+ *              [--parallel-bands] [--roi] [--fps F] [--external] [--no-prefilter] [--fill-filter]
+ * </pre>
+ *
+ * <p>A CSV row is written for every frame with the tracked offset, hit counts, candidate counts
+ * and the time spent in each stage. With more than one thread the frames are searched in
+ * parallel, each thread with its own recognizer, and the results are tracked in frame order.
+ * Region tracking depends on the previous frame, so it is only used with a single thread.
+ */
+public class ReplayRunner {
+
+    // Frames searched ahead of the tracker for each worker thread
+    private static final int FRAMES_IN_FLIGHT_PER_THREAD = 2;
+
+    private File input;
+    private File output;
+    private int threads = 1;
+    private int pyramidLevels = 0;
+    private boolean parallelBands = false;
+    private boolean regionTracking = false;
+    private boolean externalContours = false;
+    private boolean contourPrefilter = true;
+    private boolean contourFillFilter = false;
+    private double framesPerSecond = 30;
+
+    private HatchTargetPipeline pipeline;
+    private PrintWriter csv;
+    private int frames = 0;
+
+    public static void main(String... args) throws Exception {
+        ReplayRunner replayRunner = new ReplayRunner();
+        if (!replayRunner.parseArguments(args)) {
+            System.err.println("Usage: ReplayRunner <image directory or video> [--out frames.csv] [--threads N]" +
+                    " [--pyramid L] [--parallel-bands] [--roi] [--fps F] [--external] [--no-prefilter]" +
+                    " [--fill-filter]");
+            System.exit(1);
+        }
+
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+        replayRunner.run();
+        // The recognizers may have started the vision worker pool
+        System.exit(0);
+    }
+
+    private boolean parseArguments(String... args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            boolean hasValue = (i + 1) < args.length;
+            if (arg.equals("--out") && hasValue) {
+                output = new File(args[++i]);
+            } else if (arg.equals("--threads") && hasValue) {
+                threads = Math.max(1, Integer.parseInt(args[++i]));
+            } else if (arg.equals("--pyramid") && hasValue) {
+                pyramidLevels = Integer.parseInt(args[++i]);
+            } else if (arg.equals("--fps") && hasValue) {
+                framesPerSecond = Double.parseDouble(args[++i]);
+            } else if (arg.equals("--parallel-bands")) {
+                parallelBands = true;
+            } else if (arg.equals("--roi")) {
+                regionTracking = true;
+            } else if (arg.equals("--external")) {
+                externalContours = true;
+            } else if (arg.equals("--no-prefilter")) {
+                contourPrefilter = false;
+            } else if (arg.equals("--fill-filter")) {
+                contourFillFilter = true;
+            } else if (!arg.startsWith("--") && (input == null)) {
+                input = new File(arg);
+            } else {
+                return false;
+            }
+        }
+        return input != null;
+    }
+
+    private void run() throws IOException, InterruptedException, ExecutionException {
+        if (regionTracking && (threads > 1)) {
+            System.out.println("Region tracking is not used with more than one thread");
+            regionTracking = false;
+        }
+
+        RecordedFrameSource frameSource = new RecordedFrameSource(input, framesPerSecond);
+        csv = (output == null) ? null : new PrintWriter(output, "UTF-8");
+        writeHeader();
+
+        long start = System.nanoTime();
+        try {
+            if (threads == 1) {
+                runSequential(frameSource);
+            } else {
+                runParallel(frameSource);
+            }
+        } finally {
+            frameSource.close();
+            if (csv != null) {
+                csv.close();
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        if (pipeline == null) {
+            System.out.println("No frames read from " + input);
+            return;
+        }
+        System.out.println(String.format(Locale.US, "Replayed %d frames in %.2f s (%.1f frames/s), target in %d frames (%.1f%%)",
+                frames, seconds, frames / seconds, pipeline.getHits(), 100.0 * pipeline.getHits() / frames));
+    }
+
+    private void runSequential(RecordedFrameSource frameSource) {
+        Mat frame = new Mat();
+        while (frameSource.next(frame)) {
+            if (pipeline == null) {
+                pipeline = newPipeline(frame.width());
+                pipeline.setRegionTracking(regionTracking);
+            }
+            pipeline.process(frame, frameSource.getTimestamp(), 0, System.nanoTime());
+            FrameResult result = new FrameResult(frameSource.getName(), frameSource.getTimestamp(), null,
+                    pipeline.getRecognizer().getFrameStats());
+            writeRow(result);
+        }
+        frame.release();
+    }
+
+    private void runParallel(RecordedFrameSource frameSource) throws InterruptedException, ExecutionException {
+        ThreadLocal<HatchTargetRecognizer> recognizers = ThreadLocal.withInitial(this::newRecognizer);
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "ReplayWorker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ArrayDeque<Future<FrameResult>> inFlight = new ArrayDeque<>();
+
+        try {
+            Mat frame = new Mat();
+            while (frameSource.next(frame)) {
+                if (pipeline == null) {
+                    pipeline = newPipeline(frame.width());
+                }
+                if (inFlight.size() >= (threads * FRAMES_IN_FLIGHT_PER_THREAD)) {
+                    track(inFlight.poll().get());
+                }
+
+                Mat image = frame.clone();
+                String name = frameSource.getName();
+                long timestamp = frameSource.getTimestamp();
+                inFlight.add(executor.submit(() -> {
+                    try {
+                        HatchTargetRecognizer recognizer = recognizers.get();
+                        List<HatchTarget> hatchTargets = recognizer.find(image, (rr, idx) -> {});
+                        return new FrameResult(name, timestamp, hatchTargets, recognizer.getFrameStats());
+                    } finally {
+                        image.release();
+                    }
+                }));
+            }
+            frame.release();
+
+            while (!inFlight.isEmpty()) {
+                track(inFlight.poll().get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void track(FrameResult result) {
+        pipeline.track(result.hatchTargets, result.totalNanos / 1000000, result.timestamp, 0, System.nanoTime());
+        writeRow(result);
+    }
+
+    private HatchTargetPipeline newPipeline(int width) {
+        HatchTargetPipeline hatchTargetPipeline = new HatchTargetPipeline(width);
+        configure(hatchTargetPipeline.getRecognizer());
+        return hatchTargetPipeline;
+    }
+
+    private HatchTargetRecognizer newRecognizer() {
+        HatchTargetRecognizer recognizer = new HatchTargetRecognizer();
+        configure(recognizer);
+        return recognizer;
+    }
+
+    private void configure(HatchTargetRecognizer recognizer) {
+        recognizer.setPyramidLevels(pyramidLevels);
+        recognizer.setParallel(parallelBands);
+        recognizer.setExternalContours(externalContours);
+        recognizer.setContourPrefilter(contourPrefilter);
+        recognizer.setContourFillFilter(contourFillFilter);
+    }
+
+    private void writeHeader() {
+        if (csv == null) {
+            return;
+        }
+        StringBuilder header = new StringBuilder(
+                "frame,name,capture_time,offset,has_target,stale,hits,targets,contours,rectangles,pairs");
+        for (VisionStage stage : VisionStage.STAGES) {
+            header.append(',').append(stage.getLabel()).append("_ns");
+        }
+        header.append(",total_ns");
+        csv.println(header);
+    }
+
+    private void writeRow(FrameResult result) {
+        frames++;
+        if (csv == null) {
+            return;
+        }
+        StringBuilder row = new StringBuilder();
+        row.append(frames - 1).append(',')
+                .append(result.name).append(',')
+                .append(result.timestamp).append(',')
+                .append(String.format(Locale.US, "%.2f", pipeline.getOffset())).append(',')
+                .append(pipeline.hasTarget() ? 1 : 0).append(',')
+                .append(pipeline.getStaleCount()).append(',')
+                .append(pipeline.getHits()).append(',')
+                .append(result.targets).append(',')
+                .append(result.contours).append(',')
+                .append(result.rectangles).append(',')
+                .append(result.pairs);
+        for (long nanos : result.stageNanos) {
+            row.append(',').append(nanos);
+        }
+        row.append(',').append(result.totalNanos);
+        csv.println(row);
+    }
+
+    /**
+     * The targets and stats of one frame, copied before the recognizer moves on to the next.
+     */
+    private static class FrameResult {
+        private final String name;
+        private final long timestamp;
+        private final List<HatchTarget> hatchTargets;
+        private final long[] stageNanos = new long[VisionStage.STAGES.length];
+        private final int contours;
+        private final int rectangles;
+        private final int pairs;
+        private final int targets;
+        private final long totalNanos;
+
+        private FrameResult(String name, long timestamp, List<HatchTarget> hatchTargets, FrameStats frameStats) {
+            this.name = name;
+            this.timestamp = timestamp;
+            this.hatchTargets = hatchTargets;
+            for (VisionStage stage : VisionStage.STAGES) {
+                stageNanos[stage.ordinal()] = frameStats.getStageNanos(stage);
+            }
+            contours = frameStats.getContours();
+            rectangles = frameStats.getRectangles();
+            pairs = frameStats.getPairs();
+            targets = frameStats.getTargets();
+            totalNanos = frameStats.getTotalNanos();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package frc.team3407.vision;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Windowed latency percentiles of every {@link VisionStage} and of the whole search, collected
+ * from the {@link FrameStats} of each frame.
+ *
+ * <p>Frames are recorded into histograms until the window has passed. The percentiles and the
+ * frame rate of the window are then kept as the latest summary and the histograms start over,
+ * so a spike shows up for one window rather than being averaged away. Recording and summaries
+ * are expected on a single thread, the one running the pipeline.
+ */
+public class StageLatencies {
+
+    public static final double[] PERCENTILES = {50, 95, 99};
+    public static final String TOTAL_LABEL = "total";
+    // One histogram for each stage followed by the whole search
+    public static final int HISTOGRAM_COUNT = VisionStage.STAGES.length + 1;
+
+    private static final long DEFAULT_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[HISTOGRAM_COUNT];
+    private final long[][] percentileNanos = new long[histograms.length][PERCENTILES.length];
+    private final long[] maxNanos = new long[histograms.length];
+    private final long windowNanos;
+
+    private long windowStart = 0;
+    private int windowFrames = 0;
+    private double framesPerSecond = 0;
+    private boolean updated = false;
+
+    public StageLatencies() {
+        this(DEFAULT_WINDOW_NANOS);
+    }
+
+    public StageLatencies(long windowNanos) {
+        this.windowNanos = windowNanos;
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Records the stage times of a frame that finished at the given {@code System.nanoTime()}.
+     */
+    public void record(FrameStats frameStats, long now) {
+        if (windowStart == 0) {
+            windowStart = now;
+        }
+        for (VisionStage stage : VisionStage.STAGES) {
+            histograms[stage.ordinal()].record(frameStats.getStageNanos(stage));
+        }
+        histograms[VisionStage.STAGES.length].record(frameStats.getTotalNanos());
+        windowFrames++;
+
+        long elapsed = now - windowStart;
+        if (elapsed >= windowNanos) {
+            summarize(elapsed);
+            windowStart = now;
+        }
+    }
+
+    /**
+     * Returns true once after each window has been summarized.
+     */
+    public boolean takeUpdate() {
+        boolean wasUpdated = updated;
+        updated = false;
+        return wasUpdated;
+    }
+
+    /**
+     * The stage label of a histogram, or {@link #TOTAL_LABEL} for the whole search.
+     */
+    public static String getLabel(int histogram) {
+        return (histogram < VisionStage.STAGES.length) ? VisionStage.STAGES[histogram].getLabel() : TOTAL_LABEL;
+    }
+
+    public long getPercentileNanos(int histogram, int percentile) {
+        return percentileNanos[histogram][percentile];
+    }
+
+    public long getMaxNanos(int histogram) {
+        return maxNanos[histogram];
+    }
+
+    public double getFramesPerSecond() {
+        return framesPerSecond;
+    }
+
+    private void summarize(long elapsed) {
+        for (int i = 0; i < histograms.length; i++) {
+            LatencyHistogram histogram = histograms[i];
+            for (int p = 0; p < PERCENTILES.length; p++) {
+                percentileNanos[i][p] = histogram.getValueAtPercentile(PERCENTILES[p]);
+            }
+            maxNanos[i] = histogram.getMax();
+            histogram.reset();
+        }
+        framesPerSecond = windowFrames * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+        windowFrames = 0;
+        updated = true;
+    }
+}
@@ -0,0 +1,23 @@
+package frc.team3407.vision;
+
+import edu.wpi.first.vision.VisionPipeline;
+import org.opencv.core.Mat;
+
+/**
+ * A vision pipeline that is also told when each frame was captured.
+ */
+public interface TimedVisionPipeline extends VisionPipeline {
+
+    /**
+     * @param image the frame
+     * @param captureTime the cscore capture time in microseconds, or zero if unknown
+     * @param captureDelay microseconds from capture until the frame was grabbed, or zero if unknown
+     * @param grabTime the {@link System#nanoTime()} when the frame was grabbed
+     */
+    void process(Mat image, long captureTime, long captureDelay, long grabTime);
+
+    @Override
+    default void process(Mat image) {
+        process(image, 0, 0, System.nanoTime());
+    }
+}
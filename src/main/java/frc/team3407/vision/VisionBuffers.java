@@ -0,0 +1,296 @@
+package frc.team3407.vision;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Native OpenCV buffers shared by the vision pipeline and reused from frame to frame.
+ *
+ * <p>The image buffers are allocated once for a resolution and only reallocated when the
+ * frame size changes. Every pooled native Mat created by the vision code is counted, so a
+ * steady count while frames are processed shows that no pooled buffer is allocated per frame.
+ *
+ * <p>Contours cannot be pooled: the OpenCV Java binding of findContours creates a temporary Mat
+ * and a new MatOfPoint for every contour on each call, and reallocates the hierarchy whenever
+ * the contour count changes. Those are counted on their own by {@link #findContours}, so the
+ * native memory still allocated every frame shows up rather than hiding behind a steady count.
+ *
+ * <p>Regions of the source, HLS and threshold images are exposed through submatrix headers
+ * that are moved with {@code adjustROI} rather than created for every region.
+ */
+public class VisionBuffers {
+
+    private static final AtomicLong nativeAllocations = new AtomicLong();
+    private static final AtomicLong contourAllocations = new AtomicLong();
+
+    // Enough for the frames a grabber cycles through
+    private static final int SOURCE_REGION_COUNT = 4;
+
+    private final Mat hls;
+    private final Mat[] thresholds;
+    private final Mat[] hierarchies;
+    private final MatOfPoint2f[] contourPoints;
+    private final ArrayDeque<MatOfPoint2f> spareContourPoints = new ArrayDeque<>();
+    private final RegionView hlsRegion = new RegionView();
+    private final RegionView[] thresholdRegions;
+    private final RegionView[] sourceRegions = new RegionView[SOURCE_REGION_COUNT];
+    private int nextSourceRegion = 0;
+
+    private int width = 0;
+    private int height = 0;
+    private boolean released = false;
+
+    public VisionBuffers(int bandCount) {
+        hls = newMat();
+        thresholds = new Mat[bandCount];
+        hierarchies = new Mat[bandCount];
+        contourPoints = new MatOfPoint2f[bandCount];
+        thresholdRegions = new RegionView[bandCount];
+        for (int i = 0; i < bandCount; i++) {
+            thresholdRegions[i] = new RegionView();
+            thresholds[i] = newMat();
+            hierarchies[i] = newMat();
+            contourPoints[i] = new MatOfPoint2f();
+            countAllocations(1);
+        }
+    }
+
+    /**
+     * Allocates the image buffers for the given frame size if it differs from the current one.
+     */
+    public void ensureSize(int width, int height) {
+        if ((width == this.width) && (height == this.height)) {
+            return;
+        }
+        if (released) {
+            throw new IllegalStateException("Vision buffers have been released");
+        }
+
+        hls.create(height, width, CvType.CV_8UC3);
+        for (Mat threshold : thresholds) {
+            threshold.create(height, width, CvType.CV_8UC1);
+        }
+        countAllocations(1 + thresholds.length);
+
+        this.width = width;
+        this.height = height;
+    }
+
+    public Mat hls() {
+        return hls;
+    }
+
+    public Mat threshold(int band) {
+        return thresholds[band];
+    }
+
+    public Mat hierarchy(int band) {
+        return hierarchies[band];
+    }
+
+    public MatOfPoint2f contourPoints(int band) {
+        return contourPoints[band];
+    }
+
+    /**
+     * A view of a region of a source frame. A view is kept for each of the last few frame Mats
+     * seen, so a grabber that cycles through a fixed set of frames causes no allocation.
+     */
+    public Mat sourceRegion(Mat source, Rect region) {
+        RegionView regionView = null;
+        for (RegionView sourceRegion : sourceRegions) {
+            if ((sourceRegion != null) && sourceRegion.isViewOf(source)) {
+                regionView = sourceRegion;
+                break;
+            }
+        }
+        if (regionView == null) {
+            if (sourceRegions[nextSourceRegion] == null) {
+                sourceRegions[nextSourceRegion] = new RegionView();
+            }
+            regionView = sourceRegions[nextSourceRegion];
+            nextSourceRegion = (nextSourceRegion + 1) % SOURCE_REGION_COUNT;
+        }
+        return regionView.moveTo(source, region);
+    }
+
+    public Mat hlsRegion(Rect region) {
+        return hlsRegion.moveTo(hls, region);
+    }
+
+    public Mat thresholdRegion(int band, Rect region) {
+        return thresholdRegions[band].moveTo(thresholds[band], region);
+    }
+
+    /**
+     * Lends out a contour conversion buffer for work that is not tied to a single band, such as
+     * filtering part of a contour list on a worker thread. Buffers are created only when none
+     * are free, so once every worker has one no more are allocated.
+     */
+    public MatOfPoint2f borrowContourPoints() {
+        synchronized (spareContourPoints) {
+            MatOfPoint2f points = spareContourPoints.poll();
+            if (points != null) {
+                return points;
+            }
+        }
+        countAllocations(1);
+        return new MatOfPoint2f();
+    }
+
+    public void returnContourPoints(MatOfPoint2f points) {
+        synchronized (spareContourPoints) {
+            spareContourPoints.push(points);
+        }
+    }
+
+    public int getBandCount() {
+        return thresholds.length;
+    }
+
+    /**
+     * Releases all native buffers. The buffers cannot be used afterwards.
+     */
+    public void release() {
+        hls.release();
+        for (int i = 0; i < thresholds.length; i++) {
+            thresholds[i].release();
+            hierarchies[i].release();
+            contourPoints[i].release();
+            thresholdRegions[i].release();
+        }
+        hlsRegion.release();
+        for (RegionView sourceRegion : sourceRegions) {
+            if (sourceRegion != null) {
+                sourceRegion.release();
+            }
+        }
+        synchronized (spareContourPoints) {
+            for (MatOfPoint2f points : spareContourPoints) {
+                points.release();
+            }
+            spareContourPoints.clear();
+        }
+        released = true;
+        width = 0;
+        height = 0;
+    }
+
+    /**
+     * Releases the native memory of contours from a previous frame and empties the list, so the
+     * contours do not wait for the garbage collector to finalize them.
+     */
+    public static void releaseContours(List<MatOfPoint> contours) {
+        for (MatOfPoint contour : contours) {
+            contour.release();
+        }
+        contours.clear();
+    }
+
+    /**
+     * Releases the contours of the previous call and finds new ones, counting the native Mats
+     * that OpenCV allocates for them. A null offset leaves the contour points where they are.
+     */
+    public static void findContours(Mat input, List<MatOfPoint> contours, Mat hierarchy, int mode, int method,
+                                    Point offset) {
+        releaseContours(contours);
+        long hierarchyAddress = hierarchy.dataAddr();
+        if (offset == null) {
+            Imgproc.findContours(input, contours, hierarchy, mode, method);
+        } else {
+            Imgproc.findContours(input, contours, hierarchy, mode, method, offset);
+        }
+        // The binding's temporary Mat of all contours, then one MatOfPoint each
+        long allocated = 1 + contours.size();
+        if (hierarchy.dataAddr() != hierarchyAddress) {
+            allocated++;
+        }
+        contourAllocations.addAndGet(allocated);
+    }
+
+    /**
+     * Counts pooled native buffers created outside this class.
+     */
+    public static void countAllocations(int count) {
+        nativeAllocations.addAndGet(count);
+    }
+
+    /**
+     * The pooled native buffers created so far, which stops growing once the pipeline warms up.
+     */
+    public static long getNativeAllocations() {
+        return nativeAllocations.get();
+    }
+
+    /**
+     * The native Mats allocated by findContours so far, which grows with every frame.
+     */
+    public static long getContourAllocations() {
+        return contourAllocations.get();
+    }
+
+    private static Mat newMat() {
+        countAllocations(1);
+        return new Mat();
+    }
+
+    /**
+     * A submatrix header over a parent Mat. The header is created once per parent buffer and
+     * then moved to each new region with adjustROI.
+     */
+    private static class RegionView {
+        private Mat view;
+        private long parentAddress;
+        private int parentWidth;
+        private int parentHeight;
+        private int x;
+        private int y;
+        private int width;
+        private int height;
+
+        private boolean isViewOf(Mat parent) {
+            return (view != null) && (parent.dataAddr() == parentAddress) &&
+                    (parent.width() == parentWidth) && (parent.height() == parentHeight);
+        }
+
+        private Mat moveTo(Mat parent, Rect region) {
+            if (!isViewOf(parent)) {
+                release();
+                view = parent.submat(0, parent.rows(), 0, parent.cols());
+                countAllocations(1);
+                parentAddress = parent.dataAddr();
+                parentWidth = parent.width();
+                parentHeight = parent.height();
+                x = 0;
+                y = 0;
+                width = parentWidth;
+                height = parentHeight;
+            }
+
+            // Each argument is how far that edge moves outwards
+            view.adjustROI(y - region.y, (region.y + region.height) - (y + height),
+                    x - region.x, (region.x + region.width) - (x + width));
+            x = region.x;
+            y = region.y;
+            width = region.width;
+            height = region.height;
+            return view;
+        }
+
+        private void release() {
+            if (view != null) {
+                view.release();
+                view = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package frc.team3407.vision;
+
+import edu.wpi.cscore.UsbCamera;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.NetworkTablesJNI;
+import frc.team3407.logging.Level;
+import frc.team3407.logging.Log;
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs the hatch target pipeline headless on a coprocessor and publishes the same entries as the
+ * robot would, through a NetworkTables client.
+ *
+ * <pre>
+ * VisionCoprocessor [--team N | --server host] [--camera device | --images dir [--loop]]
+ *                   [--width W] [--height H] [--fps F] [--table name]
+ * </pre>
+ *
+ * <p>Without a team or server the client connects to localhost, which is handy for testing
+ * against a NetworkTables server on the same machine. Without a camera or image directory the
+ * first USB camera is used. Images are replayed at the target rate with the current time as
+ * their capture time.
+ */
+public class VisionCoprocessor {
+
+    private static final Log.Site LOG_CONNECTING = Log.site(Level.INFO, "Connecting to NetworkTables server {}");
+    private static final Log.Site LOG_CAMERA = Log.site(Level.INFO, "Processing camera {} at {}x{}");
+    private static final Log.Site LOG_IMAGES = Log.site(Level.INFO, "Processing images from {}");
+
+    private static final double DEFAULT_FRAMES_PER_SECOND = 15;
+    private static final int DEFAULT_WIDTH = 640;
+    private static final int DEFAULT_HEIGHT = 360;
+
+    private int team = 0;
+    private String server = "localhost";
+    private int cameraDevice = 0;
+    private File images;
+    private boolean loop = false;
+    private int width = DEFAULT_WIDTH;
+    private int height = DEFAULT_HEIGHT;
+    private double framesPerSecond = DEFAULT_FRAMES_PER_SECOND;
+    private String tableName = NetworkTableTargetData.VISION_TABLE_HATCH;
+
+    public static void main(String... args) {
+        VisionCoprocessor coprocessor = new VisionCoprocessor();
+        if (!coprocessor.parseArguments(args)) {
+            System.err.println("Usage: VisionCoprocessor [--team N | --server host] [--camera device | --images dir [--loop]]" +
+                    " [--width W] [--height H] [--fps F] [--table name]");
+            System.exit(1);
+        }
+
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+        coprocessor.run();
+    }
+
+    private boolean parseArguments(String... args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            boolean hasValue = (i + 1) < args.length;
+            if (arg.equals("--team") && hasValue) {
+                team = Integer.parseInt(args[++i]);
+            } else if (arg.equals("--server") && hasValue) {
+                server = args[++i];
+            } else if (arg.equals("--camera") && hasValue) {
+                cameraDevice = Integer.parseInt(args[++i]);
+            } else if (arg.equals("--images") && hasValue) {
+                images = new File(args[++i]);
+            } else if (arg.equals("--width") && hasValue) {
+                width = Integer.parseInt(args[++i]);
+            } else if (arg.equals("--height") && hasValue) {
+                height = Integer.parseInt(args[++i]);
+            } else if (arg.equals("--fps") && hasValue) {
+                framesPerSecond = Double.parseDouble(args[++i]);
+            } else if (arg.equals("--table") && hasValue) {
+                tableName = args[++i];
+            } else if (arg.equals("--loop")) {
+                loop = true;
+            } else {
+                return false;
+            }
+        }
+        return framesPerSecond > 0;
+    }
+
+    private void run() {
+        NetworkTableInstance networkTables = NetworkTableInstance.getDefault();
+        if (team > 0) {
+            LOG_CONNECTING.log("for team " + team);
+            networkTables.startClientTeam(team);
+        } else {
+            LOG_CONNECTING.log(server);
+            networkTables.startClient(server);
+        }
+
+        if (images != null) {
+            runImages();
+        } else {
+            runCamera();
+        }
+    }
+
+    private void runCamera() {
+        UsbCamera camera = new UsbCamera("coprocessor" + cameraDevice, cameraDevice);
+        camera.setResolution(width, height);
+        LOG_CAMERA.log(cameraDevice, width, height);
+
+        // A single camera only needs one worker
+        VisionScheduler visionScheduler = new VisionScheduler(1);
+        HatchTargetPipeline.attach(visionScheduler, camera, tableName, framesPerSecond,
+                VisionScheduler.DEFAULT_PRIORITY);
+        visionScheduler.start();
+
+        // The scheduler threads are daemons, so keep the main thread alive
+        while (true) {
+            LockSupport.parkNanos(TimeUnit.SECONDS.toNanos(1));
+        }
+    }
+
+    private void runImages() {
+        LOG_IMAGES.log(images);
+        long periodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / framesPerSecond);
+        Mat frame = new Mat();
+        HatchTargetPipeline pipeline = null;
+        do {
+            RecordedFrameSource frameSource = new RecordedFrameSource(images, framesPerSecond);
+            try {
+                long nextStart = System.nanoTime();
+                while (frameSource.next(frame)) {
+                    if (pipeline == null) {
+                        pipeline = new HatchTargetPipeline(frame.width(), tableName);
+                        pipeline.setRegionTracking(true);
+                    }
+                    pipeline.process(frame, NetworkTablesJNI.now(), 0, System.nanoTime());
+                    pipeline.setTargetData();
+
+                    nextStart += periodNanos;
+                    long wait = nextStart - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                    } else {
+                        nextStart = System.nanoTime();
+                    }
+                }
+            } finally {
+                frameSource.close();
+            }
+        } while (loop);
+        frame.release();
+        Log.flush(1000);
+    }
+}
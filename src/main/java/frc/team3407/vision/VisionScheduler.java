@@ -0,0 +1,295 @@
+package frc.team3407.vision;
+
+import edu.wpi.cscore.VideoSource;
+import edu.wpi.first.vision.VisionPipeline;
+import edu.wpi.first.vision.VisionRunner;
+import frc.team3407.logging.Level;
+import frc.team3407.logging.Log;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs vision pipelines for any number of cameras on one fixed set of worker threads.
+ *
+ * <p>Each camera has its own {@link FrameGrabber}, a target rate and a priority. A camera is due
+ * one period after its last run started. When more cameras are due than there are free workers,
+ * the one with the highest priority runs first, so adding a camera never takes more threads and
+ * a low priority camera slows down before a high priority one does. The workers run just below
+ * normal priority so the robot loop is not starved. A pipeline that throws is logged and its
+ * camera waits a period before running again; the worker keeps going.
+ *
+ * <p>The workers are sized on their own, not from the {@link VisionWorkerPool}, which has one
+ * thread for each core but one. Pipelines that split a frame across that pool, such as a
+ * {@link HatchTargetRecognizer} with parallel bands, would otherwise have every worker's frame
+ * compete for the same cores, so they should only run on a scheduler with a single worker.
+ */
+public class VisionScheduler {
+
+    public static final int DEFAULT_PRIORITY = 0;
+    // One worker for each of the robot's two cameras
+    public static final int DEFAULT_WORKER_COUNT = 2;
+
+    private static final Log.Site LOG_FAILED = Log.site(Level.ERROR, "Vision pipeline failed for {}: {}", 1000);
+
+    private static final long IDLE_WAIT_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // Weight of the newest sample in the average processing time
+    private static final double AVERAGE_WEIGHT = 0.1;
+
+    private final List<Camera<?>> cameras = new CopyOnWriteArrayList<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workReady = lock.newCondition();
+    private final Thread[] workers;
+
+    private volatile boolean running = false;
+
+    /**
+     * A scheduler with {@link #DEFAULT_WORKER_COUNT} workers.
+     */
+    public VisionScheduler() {
+        this(DEFAULT_WORKER_COUNT);
+    }
+
+    public VisionScheduler(int workerCount) {
+        if (workerCount <= 0) {
+            throw new IllegalArgumentException("At least one worker is needed");
+        }
+        workers = new Thread[workerCount];
+    }
+
+    /**
+     * Starts grabbing frames from a video source and running the pipeline on them.
+     */
+    public <P extends VisionPipeline> Camera<P> attach(VideoSource videoSource, P pipeline,
+                                                      VisionRunner.Listener<? super P> listener,
+                                                      double framesPerSecond, int priority) {
+        Camera<P> camera = new Camera<>(new FrameGrabber(videoSource), pipeline, listener);
+        camera.setTargetRate(framesPerSecond);
+        camera.setPriority(priority);
+        camera.frameGrabber.setFrameListener(this::signal);
+        cameras.add(camera);
+        if (running) {
+            camera.frameGrabber.start();
+        }
+        return camera;
+    }
+
+    public int getWorkerCount() {
+        return workers.length;
+    }
+
+    public void detach(Camera<?> camera) {
+        cameras.remove(camera);
+        camera.frameGrabber.stop();
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        for (Camera<?> camera : cameras) {
+            camera.frameGrabber.start();
+        }
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread(this::run, "VisionScheduler-" + i);
+            workers[i].setDaemon(true);
+            workers[i].setPriority(Thread.NORM_PRIORITY - 1);
+            workers[i].start();
+        }
+    }
+
+    public synchronized void stop() {
+        running = false;
+        for (Camera<?> camera : cameras) {
+            camera.frameGrabber.stop();
+        }
+        for (int i = 0; i < workers.length; i++) {
+            if (workers[i] != null) {
+                workers[i].interrupt();
+                workers[i] = null;
+            }
+        }
+    }
+
+    public int getWorkerCount() {
+        return workers.length;
+    }
+
+    /**
+     * Wakes the workers when a camera may have become ready, such as when a frame arrives or
+     * a rate or priority changes.
+     */
+    private void signal() {
+        lock.lock();
+        try {
+            workReady.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void run() {
+        lock.lock();
+        try {
+            while (running) {
+                long now = System.nanoTime();
+                Camera<?> next = null;
+                long nextDue = now + IDLE_WAIT_NANOS;
+                for (Camera<?> camera : cameras) {
+                    if (camera.busy) {
+                        continue;
+                    }
+                    if (camera.nextStart - now > 0) {
+                        nextDue = Math.min(nextDue, camera.nextStart);
+                    } else if (camera.frameGrabber.hasFrame() && camera.isBefore(next)) {
+                        next = camera;
+                    }
+                }
+
+                if (next == null) {
+                    try {
+                        workReady.awaitNanos(nextDue - now);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    continue;
+                }
+
+                next.busy = true;
+                lock.unlock();
+                try {
+                    next.runOnce();
+                } catch (RuntimeException e) {
+                    LOG_FAILED.log(next.frameGrabber.getName(), e);
+                    next.delay();
+                } finally {
+                    lock.lock();
+                    next.busy = false;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Processes a frame, passing its times to pipelines that use them.
+     */
+    private static void process(VisionPipeline pipeline, Frame frame) {
+        if (pipeline instanceof TimedVisionPipeline) {
+            ((TimedVisionPipeline) pipeline).process(frame.getImage(), frame.getCaptureTime(),
+                    frame.getCaptureDelay(), frame.getGrabTime());
+        } else {
+            pipeline.process(frame.getImage());
+        }
+    }
+
+    /**
+     * A camera attached to the scheduler.
+     */
+    public class Camera<P extends VisionPipeline> {
+        private final FrameGrabber frameGrabber;
+        private final P pipeline;
+        private final VisionRunner.Listener<? super P> listener;
+
+        private volatile long periodNanos;
+        private volatile int priority;
+        private volatile double averageProcessNanos = 0;
+        private volatile long processedFrames = 0;
+        // Guarded by the scheduler lock
+        private long nextStart = System.nanoTime();
+        private boolean busy = false;
+
+        private Camera(FrameGrabber frameGrabber, P pipeline, VisionRunner.Listener<? super P> listener) {
+            this.frameGrabber = frameGrabber;
+            this.pipeline = pipeline;
+            this.listener = listener;
+        }
+
+        public void setTargetRate(double framesPerSecond) {
+            if (framesPerSecond <= 0) {
+                throw new IllegalArgumentException("Target rate must be positive");
+            }
+            periodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / framesPerSecond);
+            signal();
+        }
+
+        /**
+         * Cameras with a higher priority run first when more than one is due.
+         */
+        public void setPriority(int priority) {
+            this.priority = priority;
+            signal();
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+
+        public P getPipeline() {
+            return pipeline;
+        }
+
+        public FrameGrabber getFrameGrabber() {
+            return frameGrabber;
+        }
+
+        public double getAverageProcessMilliseconds() {
+            return averageProcessNanos / TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        public long getProcessedFrames() {
+            return processedFrames;
+        }
+
+        private boolean isBefore(Camera<?> other) {
+            return (other == null) || (priority > other.priority) ||
+                    ((priority == other.priority) && (nextStart - other.nextStart < 0));
+        }
+
+        private void runOnce() {
+            Frame frame = frameGrabber.poll();
+            if (frame == null) {
+                return;
+            }
+
+            long start = System.nanoTime();
+            try {
+                process(pipeline, frame);
+                listener.copyPipelineOutputs(pipeline);
+            } finally {
+                frameGrabber.release(frame);
+            }
+            long processNanos = System.nanoTime() - start;
+            processedFrames++;
+            averageProcessNanos = (processedFrames == 1) ? processNanos :
+                    (AVERAGE_WEIGHT * processNanos) + ((1 - AVERAGE_WEIGHT) * averageProcessNanos);
+
+            // Never schedule faster than processing can keep up with
+            long next = start + Math.max(periodNanos, (long) averageProcessNanos);
+            lock.lock();
+            try {
+                nextStart = next;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Puts off the next run by a period, called without holding the scheduler lock.
+         */
+        private void delay() {
+            long next = System.nanoTime() + periodNanos;
+            lock.lock();
+            try {
+                nextStart = next;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package frc.team3407.vision;
+
+/**
+ * The timed stages of finding hatch targets in a frame.
+ */
+public enum VisionStage {
+    CONVERT("convert"),
+    THRESHOLD("threshold"),
+    CONTOURS("contours"),
+    FILTER("filter"),
+    PAIRING("pairing"),
+    DEDUP("dedup");
+
+    static final VisionStage[] STAGES = values();
+
+    private final String label;
+
+    VisionStage(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+}
@@ -0,0 +1,30 @@
+package frc.team3407.vision;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * Worker threads shared by the vision code. The pool is sized to the cores that are left
+ * over once the thread that grabs and processes frames has one to itself.
+ */
+public class VisionWorkerPool {
+
+    private static class Holder {
+        private static final ForkJoinPool POOL = new ForkJoinPool(getParallelism(), pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("VisionWorker-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
+
+    private VisionWorkerPool() {
+    }
+
+    public static ForkJoinPool get() {
+        return Holder.POOL;
+    }
+
+    public static int getParallelism() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    }
+}
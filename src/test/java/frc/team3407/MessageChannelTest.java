@@ -0,0 +1,228 @@
+package frc.team3407;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MessageChannelTest {
+
+    private static final long LOOP_NANOS = 20000000;
+
+    private MessageChannel robot;
+    private MessageChannel station;
+    private long now;
+
+    @Before
+    public void setUp() {
+        robot = new MessageChannel("robot");
+        station = new MessageChannel("station");
+        now = System.nanoTime();
+    }
+
+    @Test
+    public void messagesArriveInOrder() {
+        robot.send("a");
+        robot.send("b");
+        station.receive(frame(robot));
+        robot.send("c");
+        station.receive(frame(robot));
+
+        assertEquals(Arrays.asList("a", "b", "c"), drain(station));
+        assertEquals(3, robot.getSentMessages());
+        assertEquals(3, station.getReceivedMessages());
+    }
+
+    @Test
+    public void acknowledgementIsCumulative() {
+        robot.send("a");
+        robot.send("b");
+        station.receive(frame(robot));
+        robot.send("c");
+        assertEquals(3, robot.getUnacknowledgedMessages());
+
+        robot.receive(frame(station));
+        assertEquals(1, robot.getUnacknowledgedMessages());
+        station.receive(frame(robot));
+        robot.receive(frame(station));
+        assertEquals(0, robot.getUnacknowledgedMessages());
+    }
+
+    @Test
+    public void nothingIsWrittenWithoutNewsUntilTheRetransmitTime() {
+        assertNull(robot.nextFrame(now));
+        robot.send("a");
+        assertNotNull(robot.nextFrame(now));
+        assertNull(robot.nextFrame(now + LOOP_NANOS));
+        assertNotNull(robot.nextFrame(now + MessageChannel.RETRANSMIT_NANOS));
+        assertEquals(1, robot.getRetransmittedMessages());
+    }
+
+    @Test
+    public void droppedFrameIsSentAgain() {
+        robot.send("a");
+        // Replaced in the entry before the station read it
+        robot.nextFrame(now);
+        now += MessageChannel.RETRANSMIT_NANOS;
+        byte[] resend = robot.nextFrame(now);
+
+        assertNotNull(resend);
+        station.receive(resend);
+        assertEquals(Collections.singletonList("a"), drain(station));
+        assertEquals(1, robot.getRetransmittedMessages());
+    }
+
+    @Test
+    public void resendsAreNeverEqualToTheLastFrame() {
+        // Network tables drops a value equal to the current one, so a resend must differ
+        robot.send("a");
+        byte[] first = robot.nextFrame(now);
+        byte[] resend = robot.nextFrame(now + MessageChannel.RETRANSMIT_NANOS);
+        assertFalse(Arrays.equals(first, resend));
+    }
+
+    @Test
+    public void messagesAfterADroppedFrameCarryTheMissingOnes() {
+        robot.send("a");
+        robot.nextFrame(now);
+        robot.send("b");
+        station.receive(frame(robot));
+        assertEquals(Arrays.asList("a", "b"), drain(station));
+        assertEquals(0, station.getGaps());
+    }
+
+    @Test
+    public void duplicatesAreDeliveredOnce() {
+        robot.send("a");
+        byte[] first = frame(robot);
+        station.receive(first);
+        robot.send("b");
+        // The acknowledgement has not reached the robot, so "a" goes out again with "b"
+        station.receive(frame(robot));
+        station.receive(first);
+
+        assertEquals(Arrays.asList("a", "b"), drain(station));
+        assertEquals(2, station.getDuplicateMessages());
+    }
+
+    @Test
+    public void restartedReceiverGetsTheStreamFromTheStart() {
+        robot.send("a");
+        robot.send("b");
+        station.receive(frame(robot));
+        robot.receive(frame(station));
+        robot.send("c");
+
+        // The new station joins mid-stream, sees a gap and waits
+        MessageChannel restarted = new MessageChannel("station");
+        restarted.receive(frame(robot));
+        assertEquals(Collections.emptyList(), drain(restarted));
+        assertEquals(1, restarted.getGaps());
+        assertEquals(2, restarted.getMissedMessages());
+
+        // Its frame tells the robot to number the unacknowledged messages from zero again
+        robot.receive(frame(restarted));
+        restarted.receive(frame(robot));
+        assertEquals(Collections.singletonList("c"), drain(restarted));
+        robot.receive(frame(restarted));
+        assertEquals(0, robot.getUnacknowledgedMessages());
+
+        robot.send("d");
+        restarted.receive(frame(robot));
+        assertEquals(Collections.singletonList("d"), drain(restarted));
+    }
+
+    @Test
+    public void restartedSenderIsNotTakenForDuplicates() {
+        robot.send("a");
+        robot.send("b");
+        station.receive(frame(robot));
+        assertEquals(Arrays.asList("a", "b"), drain(station));
+
+        MessageChannel restarted = new MessageChannel("robot");
+        restarted.send("c");
+        station.receive(frame(restarted));
+        assertEquals(Collections.singletonList("c"), drain(station));
+        assertEquals(0, station.getDuplicateMessages());
+        assertEquals(0, station.getGaps());
+    }
+
+    @Test
+    public void framesAreLimitedToTheMaximumSize() {
+        char[] text = new char[1000];
+        Arrays.fill(text, 'x');
+        String message = new String(text);
+        for (int i = 0; i < 10; i++) {
+            robot.send(message);
+        }
+
+        byte[] first = frame(robot);
+        assertTrue(first.length <= MessageChannel.MAX_FRAME_BYTES);
+        station.receive(first);
+        assertEquals(4, drain(station).size());
+
+        // Each acknowledgement makes room for the next messages
+        int delivered = 4;
+        while (delivered < 10) {
+            robot.receive(frame(station));
+            station.receive(frame(robot));
+            delivered += drain(station).size();
+        }
+        assertEquals(10, delivered);
+        assertEquals(10, station.getReceivedMessages());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void messageLongerThanAFrameIsRefused() {
+        char[] text = new char[MessageChannel.MAX_MESSAGE_BYTES + 1];
+        Arrays.fill(text, 'x');
+        robot.send(new String(text));
+    }
+
+    @Test
+    public void largestMessageFitsInAFrame() {
+        char[] text = new char[MessageChannel.MAX_MESSAGE_BYTES];
+        Arrays.fill(text, 'x');
+        robot.send(new String(text));
+        byte[] frame = frame(robot);
+        assertEquals(MessageChannel.MAX_FRAME_BYTES, frame.length);
+        station.receive(frame);
+        assertEquals(1, drain(station).size());
+    }
+
+    @Test
+    public void malformedFramesAreIgnored() {
+        station.receive(null);
+        station.receive(new byte[3]);
+        byte[] wrongVersion = new byte[64];
+        wrongVersion[0] = 99;
+        station.receive(wrongVersion);
+        assertEquals(0, station.getReceivedMessages());
+        assertNull(station.nextFrame(now));
+    }
+
+    /**
+     * The next frame an end writes, a robot loop after the last one.
+     */
+    private byte[] frame(MessageChannel channel) {
+        now += LOOP_NANOS;
+        byte[] frame = channel.nextFrame(now);
+        assertNotNull(frame);
+        return frame;
+    }
+
+    private static List<String> drain(MessageChannel channel) {
+        List<String> messages = new ArrayList<>();
+        channel.drain(messages::add);
+        return messages;
+    }
+}
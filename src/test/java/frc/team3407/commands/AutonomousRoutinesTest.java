@@ -0,0 +1,136 @@
+package frc.team3407.commands;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AutonomousRoutinesTest {
+
+    private static final File DEPLOY_DIRECTORY = new File("src/main/deploy", AutonomousRoutines.DIRECTORY_NAME);
+    private static final double DELTA = 1e-9;
+
+    private final AutonomousRoutines routines = new AutonomousRoutines();
+    private final List<File> files = new ArrayList<>();
+
+    @After
+    public void deleteFiles() {
+        for (File file : files) {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void parsesTheDriveForwardRoutine() throws IOException {
+        AutonomousRoutines.Routine routine = routines.parse(new File(DEPLOY_DIRECTORY, "drive_forward.txt"));
+        assertEquals("Drive forward", routine.name);
+        assertFalse(routine.isDefault);
+        assertEquals(2, routine.steps.size());
+
+        AutonomousRoutines.Step drive = routine.steps.get(0);
+        assertEquals("drive", drive.type);
+        assertEquals(2.0, drive.values[0], DELTA);
+        assertSame(drive.left, drive.right);
+        assertEquals(2.0, drive.left.getPosition(drive.left.getLength() - 1), DELTA);
+        assertEquals("align", routine.steps.get(1).type);
+    }
+
+    @Test
+    public void parsesTheTimedTestRoutine() throws IOException {
+        AutonomousRoutines.Routine routine = routines.parse(new File(DEPLOY_DIRECTORY, "timed_test.txt"));
+        assertEquals("Timed test", routine.name);
+        assertTrue(routine.isDefault);
+        assertEquals(3, routine.steps.size());
+        double[][] expected = {{1, 0.5, 0}, {1, 0, 0.5}, {2, 0.5, 0.5}};
+        for (int i = 0; i < expected.length; i++) {
+            AutonomousRoutines.Step step = routine.steps.get(i);
+            assertEquals("timed", step.type);
+            assertTrue(Arrays.toString(step.values), Arrays.equals(expected[i], step.values));
+            assertNull(step.left);
+        }
+    }
+
+    @Test
+    public void everyDeployedRoutineParses() throws IOException {
+        File[] deployed = DEPLOY_DIRECTORY.listFiles(File::isFile);
+        assertTrue((deployed != null) && (deployed.length > 0));
+        for (File file : deployed) {
+            assertFalse(routines.parse(file).steps.isEmpty());
+        }
+    }
+
+    @Test
+    public void nameDefaultsToTheFileName() throws IOException {
+        AutonomousRoutines.Routine routine = routines.parse(write("wait_only.txt", "wait 1"));
+        assertEquals("wait_only", routine.name);
+        assertEquals("wait", routine.steps.get(0).type);
+    }
+
+    @Test
+    public void equalValuesShareProfilesHoweverWritten() throws IOException {
+        AutonomousRoutines.Routine first = routines.parse(write("first.txt", "drive 2", "turn 90"));
+        AutonomousRoutines.Routine second = routines.parse(write("second.txt", "drive 2.0", "turn 90.00"));
+        assertSame(first.steps.get(0).left, second.steps.get(0).left);
+        assertSame(first.steps.get(1).left, second.steps.get(1).left);
+        assertSame(first.steps.get(1).right, second.steps.get(1).right);
+    }
+
+    @Test
+    public void turnsRunTheRightSideNegated() throws IOException {
+        AutonomousRoutines.Step turn = routines.parse(write("turn.txt", "turn -45")).steps.get(0);
+        int last = turn.left.getLength() - 1;
+        assertTrue(turn.left.getPosition(last) < 0);
+        assertEquals(-turn.left.getPosition(last), turn.right.getPosition(last), DELTA);
+    }
+
+    @Test
+    public void commentsAndBlankLinesAreSkipped() throws IOException {
+        AutonomousRoutines.Routine routine = routines.parse(write("comments.txt",
+                "# A comment", "", "   ", "wait 0.5   # half a second"));
+        assertEquals(1, routine.steps.size());
+        assertEquals(0.5, routine.steps.get(0).values[0], DELTA);
+    }
+
+    @Test
+    public void errorsNameTheLine() throws IOException {
+        assertError("line 2: unknown step jump", "wait 1", "jump 2");
+        assertError("line 1: not a number: far", "drive far");
+        assertError("line 1: drive takes 1 value", "drive 1 2");
+        assertError("line 1: must be positive: 0", "wait 0");
+        assertError("line 1: output must be between -1 and 1: 1.5", "timed 1 1.5 0");
+        assertError("line 2: name must come before the steps", "align", "name Late");
+        assertError("no steps", "name Empty", "default");
+    }
+
+    private void assertError(String message, String... lines) throws IOException {
+        File file = write("error.txt", lines);
+        try {
+            routines.parse(file);
+            fail("Expected " + message);
+        } catch (IllegalArgumentException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+
+    private File write(String name, String... lines) throws IOException {
+        File directory = Files.createTempDirectory("autonomous").toFile();
+        File file = new File(directory, name);
+        Files.write(file.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+        files.add(file);
+        files.add(directory);
+        return file;
+    }
+}
@@ -0,0 +1,248 @@
+package frc.team3407.logging;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LogTest {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private Lines lines;
+
+    @Before
+    public void setUp() {
+        Log.flush(TIMEOUT_MILLIS);
+        Log.setLevel(Level.INFO);
+        lines = new Lines();
+        Log.setOutput(lines);
+    }
+
+    @After
+    public void tearDown() {
+        Log.flush(TIMEOUT_MILLIS);
+        Log.setOutput(System.out);
+        Log.setLevel(Level.INFO);
+    }
+
+    @Test
+    public void levelNamesAreCaseInsensitive() {
+        assertEquals(Level.DEBUG, Log.parseLevel("debug"));
+        assertEquals(Level.WARN, Log.parseLevel(" Warn "));
+        assertEquals(Level.ERROR, Log.parseLevel("ERROR"));
+    }
+
+    @Test
+    public void unknownOrMissingLevelIsInfo() {
+        assertEquals(Level.INFO, Log.parseLevel(null));
+        assertEquals(Level.INFO, Log.parseLevel(""));
+        assertEquals(Level.INFO, Log.parseLevel("verbose"));
+    }
+
+    @Test
+    public void messagesAreWrittenInOrder() {
+        Log.Site site = Log.site(Level.INFO, "order {} of {}");
+        for (int i = 0; i < 200; i++) {
+            site.log(i, 200);
+        }
+        Log.flush(TIMEOUT_MILLIS);
+
+        List<String> written = lines.matching("[INFO] order ");
+        assertEquals(200, written.size());
+        for (int i = 0; i < 200; i++) {
+            assertEquals("[INFO] order " + i + " of 200", written.get(i));
+        }
+    }
+
+    @Test
+    public void argumentsAreFormattedByType() {
+        StringBuilder mutable = new StringBuilder("before");
+        Log.site(Level.INFO, "format {} {} {}").log(7, 2.5);
+        Log.site(Level.INFO, "format {} {} {}").log("text", Level.WARN, mutable);
+        mutable.setLength(0);
+        mutable.append("after");
+        Log.flush(TIMEOUT_MILLIS);
+
+        List<String> written = lines.matching("[INFO] format ");
+        assertEquals(2, written.size());
+        // Missing arguments leave the placeholder, objects are captured when logged
+        assertEquals("[INFO] format 7 2.5 {}", written.get(0));
+        assertEquals("[INFO] format text WARN before", written.get(1));
+    }
+
+    @Test
+    public void failingToStringDoesNotStopLogging() {
+        Object broken = new Object() {
+            @Override
+            public String toString() {
+                throw new IllegalStateException("broken");
+            }
+        };
+        Log.site(Level.INFO, "broken {} {}").log(broken, "next");
+        Log.site(Level.INFO, "after {}").log(1);
+        Log.flush(TIMEOUT_MILLIS);
+
+        List<String> written = lines.matching("[INFO] broken ");
+        assertEquals(1, written.size());
+        assertTrue(written.get(0).contains("toString failed"));
+        assertTrue(written.get(0).endsWith(" next"));
+        assertEquals(1, lines.matching("[INFO] after 1").size());
+    }
+
+    @Test
+    public void throwablesArePrintedWithTheirStackTrace() {
+        IllegalStateException thrown = new IllegalStateException("failed here");
+        Log.site(Level.ERROR, "pipeline failed for {}: {}").log("front", thrown);
+        Log.flush(TIMEOUT_MILLIS);
+
+        List<String> all = lines.matching("");
+        int message = all.indexOf("[ERROR] pipeline failed for front: " + thrown);
+        assertTrue(message >= 0);
+        assertEquals(thrown.toString(), all.get(message + 1));
+        assertTrue(all.get(message + 2).startsWith("\tat " + LogTest.class.getName()));
+    }
+
+    @Test
+    public void nothingIsWrittenBelowTheLevel() {
+        Log.setLevel(Level.WARN);
+        Log.Site info = Log.site(Level.INFO, "quiet {}");
+        Log.Site warn = Log.site(Level.WARN, "loud {}");
+        assertFalse(info.isEnabled());
+        assertFalse(Log.isEnabled(Level.DEBUG));
+        assertTrue(warn.isEnabled());
+
+        info.log(1);
+        warn.log(2);
+        info.log(3);
+        Log.flush(TIMEOUT_MILLIS);
+
+        assertTrue(lines.matching("[INFO] quiet").isEmpty());
+        assertEquals(1, lines.matching("[WARN] loud 2").size());
+    }
+
+    @Test
+    public void rateLimitedSiteCountsSkippedMessages() throws InterruptedException {
+        Log.Site site = Log.site(Level.INFO, "limited {}", 200);
+        for (int i = 0; i < 5; i++) {
+            site.log(i);
+        }
+        Thread.sleep(300);
+        site.log(5);
+        Log.flush(TIMEOUT_MILLIS);
+
+        List<String> written = lines.matching("[INFO] limited ");
+        assertEquals(2, written.size());
+        assertEquals("[INFO] limited 0", written.get(0));
+        assertEquals("[INFO] limited 5 (4 more)", written.get(1));
+    }
+
+    @Test
+    public void fullRingDropsAndCountsMessages() throws InterruptedException {
+        BlockingLines blocking = new BlockingLines();
+        Log.setOutput(blocking);
+        Log.Site site = Log.site(Level.INFO, "ring {}");
+
+        long droppedBefore = Log.getDroppedCount();
+        try {
+            site.log(-1);
+            assertTrue(blocking.entered.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+            // The drainer is stuck writing the first message, which still holds its slot
+            for (int i = 0; i < Log.CAPACITY + 10; i++) {
+                site.log(i);
+            }
+            assertEquals(11, Log.getDroppedCount() - droppedBefore);
+        } finally {
+            blocking.release.countDown();
+        }
+
+        Log.flush(TIMEOUT_MILLIS);
+        List<String> written = blocking.matching("[INFO] ring ");
+        assertEquals(Log.CAPACITY, written.size());
+        assertEquals("[INFO] ring -1", written.get(0));
+        assertEquals("[INFO] ring " + (Log.CAPACITY - 2), written.get(written.size() - 1));
+        assertEquals("[WARN] 11 log messages dropped", blocking.next("[WARN] 11 log messages dropped"));
+    }
+
+    /**
+     * Collects the lines written by the drain thread.
+     */
+    private static class Lines extends PrintStream {
+        private final BlockingQueue<String> written = new LinkedBlockingQueue<>();
+
+        private Lines() {
+            super(new ByteArrayOutputStream());
+        }
+
+        @Override
+        public void println(String line) {
+            add(line);
+        }
+
+        @Override
+        public void println(Object line) {
+            add(String.valueOf(line));
+        }
+
+        protected void add(String line) {
+            written.add(line);
+        }
+
+        /**
+         * The lines written so far that start with the prefix. Other code may log at the same time.
+         */
+        List<String> matching(String prefix) {
+            List<String> matching = new ArrayList<>();
+            for (String line : written) {
+                if (line.startsWith(prefix)) {
+                    matching.add(line);
+                }
+            }
+            return matching;
+        }
+
+        /**
+         * Waits for a line starting with the prefix, returning null if none is written in time.
+         */
+        String next(String prefix) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS);
+            List<String> matching = matching(prefix);
+            while (matching.isEmpty() && (System.nanoTime() < deadline)) {
+                Thread.sleep(10);
+                matching = matching(prefix);
+            }
+            return matching.isEmpty() ? null : matching.get(0);
+        }
+    }
+
+    /**
+     * Holds up the drain thread on the first line until released.
+     */
+    private static class BlockingLines extends Lines {
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        protected void add(String line) {
+            super.add(line);
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package frc.team3407.motion;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MotionProfileTest {
+
+    private static final double INTERVAL = 0.02;
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void trapezoidStartsAndEndsAtRest() {
+        MotionProfile profile = MotionProfile.trapezoidal(2, 2, 2, INTERVAL);
+        int last = profile.getLength() - 1;
+        assertEquals(0, profile.getPosition(0), DELTA);
+        assertEquals(0, profile.getVelocity(0), DELTA);
+        assertEquals(2, profile.getPosition(last), DELTA);
+        assertEquals(0, profile.getVelocity(last), DELTA);
+        assertEquals(0, profile.getAcceleration(last), DELTA);
+    }
+
+    @Test
+    public void trapezoidCruisesAtTheMaximumVelocity() {
+        MotionProfile profile = MotionProfile.trapezoidal(4, 2, 2, INTERVAL);
+        assertEquals(2, maxAbsVelocity(profile), DELTA);
+        assertTrue(maxAbsAcceleration(profile) <= 2 + DELTA);
+        // 1 s accelerating, 1 s cruising and 1 s decelerating
+        assertEquals(3, profile.getDuration(), INTERVAL);
+    }
+
+    @Test
+    public void shortTrapezoidNeverReachesTheMaximumVelocity() {
+        MotionProfile profile = MotionProfile.trapezoidal(0.5, 2, 2, INTERVAL);
+        assertEquals(1, maxAbsVelocity(profile), 0.05);
+        assertEquals(0.5, profile.getPosition(profile.getLength() - 1), DELTA);
+    }
+
+    @Test
+    public void sCurveEndsAtTheDistance() {
+        for (double distance : new double[] {0.3, 1, 4, -2.5}) {
+            MotionProfile profile = MotionProfile.sCurve(distance, 2, 2.5, 15, INTERVAL);
+            int last = profile.getLength() - 1;
+            assertEquals(0, profile.getPosition(0), DELTA);
+            assertEquals(distance, profile.getPosition(last), DELTA);
+            assertEquals(0, profile.getVelocity(last), DELTA);
+            assertEquals(distance, integrateVelocity(profile), 1e-6);
+        }
+    }
+
+    @Test
+    public void sCurveStaysWithinTheLimits() {
+        MotionProfile profile = MotionProfile.sCurve(4, 2, 2, 10, INTERVAL);
+        assertEquals(2, maxAbsVelocity(profile), 1e-6);
+        assertTrue(maxAbsAcceleration(profile) <= 2 + 1e-6);
+        double maxJerk = 0;
+        for (int i = 1; i < profile.getLength(); i++) {
+            double jerk = (profile.getAcceleration(i) - profile.getAcceleration(i - 1)) / INTERVAL;
+            maxJerk = Math.max(maxJerk, Math.abs(jerk));
+        }
+        assertTrue(String.valueOf(maxJerk), maxJerk <= 10 + 1e-6);
+    }
+
+    @Test
+    public void sCurveIsLongerThanTheTrapezoid() {
+        MotionProfile trapezoid = MotionProfile.trapezoidal(4, 2, 2, INTERVAL);
+        MotionProfile sCurve = MotionProfile.sCurve(4, 2, 2, 10, INTERVAL);
+        assertTrue(sCurve.getDuration() > trapezoid.getDuration());
+    }
+
+    @Test
+    public void negativeDistancesMoveBackwards() {
+        MotionProfile profile = MotionProfile.trapezoidal(-2, 2, 2, INTERVAL);
+        for (int i = 0; i < profile.getLength(); i++) {
+            assertTrue(profile.getVelocity(i) <= 0);
+        }
+        assertEquals(-2, profile.getPosition(profile.getLength() - 1), DELTA);
+    }
+
+    @Test
+    public void negateMirrorsEverySample() {
+        MotionProfile profile = MotionProfile.sCurve(1.5, 2, 2.5, 15, INTERVAL);
+        MotionProfile negated = profile.negate();
+        assertEquals(profile.getLength(), negated.getLength());
+        for (int i = 0; i < profile.getLength(); i++) {
+            assertEquals(-profile.getPosition(i), negated.getPosition(i), DELTA);
+            assertEquals(-profile.getVelocity(i), negated.getVelocity(i), DELTA);
+            assertEquals(-profile.getAcceleration(i), negated.getAcceleration(i), DELTA);
+        }
+    }
+
+    @Test
+    public void indexIsClampedToTheProfile() {
+        MotionProfile profile = MotionProfile.trapezoidal(1, 2, 2, INTERVAL);
+        assertEquals(0, profile.getIndex(-1));
+        assertEquals(5, profile.getIndex(0.105));
+        assertEquals(profile.getLength() - 1, profile.getIndex(profile.getDuration() + 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void limitsMustBePositive() {
+        MotionProfile.trapezoidal(1, 0, 2, INTERVAL);
+    }
+
+    private static double maxAbsVelocity(MotionProfile profile) {
+        double max = 0;
+        for (int i = 0; i < profile.getLength(); i++) {
+            max = Math.max(max, Math.abs(profile.getVelocity(i)));
+        }
+        return max;
+    }
+
+    private static double maxAbsAcceleration(MotionProfile profile) {
+        double max = 0;
+        for (int i = 0; i < profile.getLength(); i++) {
+            max = Math.max(max, Math.abs(profile.getAcceleration(i)));
+        }
+        return max;
+    }
+
+    private static double integrateVelocity(MotionProfile profile) {
+        double distance = 0;
+        for (int i = 1; i < profile.getLength(); i++) {
+            distance += 0.5 * (profile.getVelocity(i - 1) + profile.getVelocity(i)) * profile.getInterval();
+        }
+        return distance;
+    }
+}
@@ -0,0 +1,74 @@
+package frc.team3407.subsystems;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class DriveBaseTest {
+
+    private static final double DELTA = 1e-9;
+    // Setpoints are packed as floats
+    private static final double FLOAT_DELTA = 1e-7;
+
+    @Test
+    public void packingKeepsBothSides() {
+        double[][] pairs = {{0, 0}, {1, -1}, {-1, 1}, {0.25, -0.75}, {-0.001, 0.999}, {0.5, 0.5}};
+        for (double[] pair : pairs) {
+            long packed = DriveBase.pack(pair[0], pair[1]);
+            assertEquals(pair[0], DriveBase.unpackLeft(packed), FLOAT_DELTA);
+            assertEquals(pair[1], DriveBase.unpackRight(packed), FLOAT_DELTA);
+        }
+    }
+
+    @Test
+    public void negativeRightDoesNotLeakIntoLeft() {
+        long packed = DriveBase.pack(0, -0.5);
+        assertEquals(0, DriveBase.unpackLeft(packed), DELTA);
+        assertEquals(-0.5, DriveBase.unpackRight(packed), FLOAT_DELTA);
+    }
+
+    @Test
+    public void rampLimitsTheChangePerTick() {
+        assertEquals(0.1, DriveBase.ramp(0, 1, 0.1), DELTA);
+        assertEquals(0.9, DriveBase.ramp(1, 0, 0.1), DELTA);
+        assertEquals(-0.1, DriveBase.ramp(0, -1, 0.1), DELTA);
+        assertEquals(0.55, DriveBase.ramp(0.5, 0.55, 0.1), DELTA);
+    }
+
+    @Test
+    public void rampReachesTheTarget() {
+        double output = 0;
+        int ticks = 0;
+        while (output != 1) {
+            output = DriveBase.ramp(output, 1, 0.25);
+            ticks++;
+        }
+        assertEquals(4, ticks);
+    }
+
+    @Test
+    public void noRampAppliesTheTargetAtOnce() {
+        assertEquals(-1, DriveBase.ramp(1, -1, 0), DELTA);
+    }
+
+    @Test
+    public void shapeClampsAndKeepsTheEnds() {
+        assertEquals(1, DriveBase.shape(1.5, true), DELTA);
+        assertEquals(-1, DriveBase.shape(-2, false), DELTA);
+        assertEquals(1, DriveBase.shape(1, false), DELTA);
+    }
+
+    @Test
+    public void shapeRemovesTheDeadband() {
+        assertEquals(0, DriveBase.shape(DriveBase.DEADBAND, false), DELTA);
+        assertEquals(0, DriveBase.shape(-DriveBase.DEADBAND / 2, true), DELTA);
+        assertEquals(0.5, DriveBase.shape(0.5 + (0.5 * DriveBase.DEADBAND), false), DELTA);
+    }
+
+    @Test
+    public void shapeSquaresOnceKeepingTheSign() {
+        double half = 0.5 + (0.5 * DriveBase.DEADBAND);
+        assertEquals(0.25, DriveBase.shape(half, true), DELTA);
+        assertEquals(-0.25, DriveBase.shape(-half, true), DELTA);
+    }
+}
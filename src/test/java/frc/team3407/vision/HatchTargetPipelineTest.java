@@ -0,0 +1,161 @@
+package frc.team3407.vision;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opencv.core.Point;
+import org.opencv.core.RotatedRect;
+import org.opencv.core.Size;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HatchTargetPipelineTest {
+
+    private static final double DELTA = 1e-9;
+    private static final int WIDTH = 640;
+    // Capture times are in microseconds, 10 frames a second
+    private static final long FRAME_INTERVAL = 100000;
+
+    private HatchTargetPipeline pipeline;
+    private long captureTime;
+
+    @Before
+    public void setUp() {
+        pipeline = new HatchTargetPipeline(WIDTH, NetworkTableTargetData.VISION_TABLE_HATCH, null);
+        captureTime = 1000000;
+    }
+
+    @Test
+    public void noFramesMeansNoTarget() {
+        HatchTargetResult result = pipeline.getResult();
+        assertFalse(result.hasTarget());
+        assertEquals(0, result.getCount());
+        assertEquals(WIDTH, result.getWidth());
+    }
+
+    @Test
+    public void hitSetsTheOffsetFromTheCenter() {
+        HatchTargetResult result = track(target(400));
+        assertTrue(result.hasTarget());
+        assertEquals(80, result.getOffset(), DELTA);
+        assertEquals(0, result.getStaleCount());
+        assertEquals(1, result.getHits());
+        assertEquals(1, result.getCount());
+        assertEquals(captureTime, result.getCaptureTime());
+    }
+
+    @Test
+    public void leftmostOfSeveralTargetsIsTracked() {
+        assertEquals(-170, track(target(400), target(150), target(300)).getOffset(), DELTA);
+    }
+
+    @Test
+    public void missesHoldTheLastOffsetUntilStale() {
+        track(target(400));
+        for (int miss = 1; miss < HatchTargetPipeline.MAX_STALE_COUNT; miss++) {
+            HatchTargetResult result = track();
+            assertTrue(result.hasTarget());
+            assertEquals(80, result.getOffset(), DELTA);
+            assertEquals(miss, result.getStaleCount());
+        }
+
+        HatchTargetResult result = track();
+        assertFalse(result.hasTarget());
+        assertEquals(WIDTH, result.getOffset(), DELTA);
+        assertEquals(0, result.getStaleCount());
+        assertEquals(0, result.getOffsetVelocity(), DELTA);
+        assertEquals(1, result.getHits());
+        assertEquals(HatchTargetPipeline.MAX_STALE_COUNT + 1, result.getCount());
+    }
+
+    @Test
+    public void nullTargetsCountAsAMiss() {
+        track(target(400));
+        HatchTargetResult result = track((List<HatchTarget>) null);
+        assertTrue(result.hasTarget());
+        assertEquals(1, result.getStaleCount());
+        assertEquals(2, result.getCount());
+    }
+
+    @Test
+    public void hitAfterAMissClearsTheStaleCount() {
+        track(target(400));
+        track();
+        track();
+        HatchTargetResult result = track(target(410));
+        assertEquals(0, result.getStaleCount());
+        assertEquals(90, result.getOffset(), DELTA);
+        assertEquals(2, result.getHits());
+    }
+
+    @Test
+    public void velocityIsTheOffsetChangeOverTheCaptureInterval() {
+        track(target(400));
+        // 10 px in a tenth of a second
+        assertEquals(100, track(target(410)).getOffsetVelocity(), DELTA);
+        assertEquals(-200, track(target(390)).getOffsetVelocity(), DELTA);
+    }
+
+    @Test
+    public void velocitySpansMissesSinceTheLastHit() {
+        track(target(400));
+        track();
+        // 15 px over two frame intervals
+        assertEquals(75, track(target(415)).getOffsetVelocity(), DELTA);
+    }
+
+    @Test
+    public void firstHitHasNoVelocity() {
+        assertEquals(0, track(target(400)).getOffsetVelocity(), DELTA);
+    }
+
+    @Test
+    public void hitsTooFarApartHaveNoVelocity() {
+        track(target(400));
+        captureTime += HatchTargetPipeline.MAX_VELOCITY_INTERVAL_MICROSECONDS;
+        assertEquals(0, track(target(410)).getOffsetVelocity(), DELTA);
+    }
+
+    @Test
+    public void hitAfterLosingTheTargetHasNoVelocity() {
+        track(target(400));
+        for (int miss = 0; miss < HatchTargetPipeline.MAX_STALE_COUNT; miss++) {
+            track();
+        }
+        HatchTargetResult result = track(target(300));
+        assertTrue(result.hasTarget());
+        assertEquals(-20, result.getOffset(), DELTA);
+        assertEquals(0, result.getOffsetVelocity(), DELTA);
+    }
+
+    @Test
+    public void durationAndTimesComeFromTheLatestFrame() {
+        pipeline.track(Collections.emptyList(), 7, 2000000, 30000, 55);
+        pipeline.track(Collections.singletonList(target(400)), 5, 2250000, 20000, 66);
+        HatchTargetResult result = pipeline.getResult();
+        assertEquals(12, result.getDuration());
+        assertEquals(2250000, result.getCaptureTime());
+        assertEquals(20000, result.getCaptureDelay());
+        assertEquals(66, result.getGrabTime());
+    }
+
+    private HatchTargetResult track(HatchTarget... hatchTargets) {
+        return track(Arrays.asList(hatchTargets));
+    }
+
+    private HatchTargetResult track(List<HatchTarget> hatchTargets) {
+        captureTime += FRAME_INTERVAL;
+        pipeline.track(hatchTargets, 1, captureTime, 0, 0);
+        return pipeline.getResult();
+    }
+
+    private static HatchTarget target(double midPoint) {
+        return new HatchTarget(new RotatedRect(new Point(midPoint - 50, 100), new Size(15, 40), 15),
+                new RotatedRect(new Point(midPoint + 50, 100), new Size(15, 40), 75));
+    }
+}
@@ -0,0 +1,234 @@
+package frc.team3407.vision;
+
+import org.junit.Test;
+import org.opencv.core.Point;
+import org.opencv.core.RotatedRect;
+import org.opencv.core.Size;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class HatchTargetRecognizerTest {
+
+    private static final double MIN_X = HatchTargetRecognizer.RECTANGLE_PAIR_MIN_X_DIFFERENCE;
+    private static final double MAX_X = HatchTargetRecognizer.RECTANGLE_PAIR_MAX_X_DIFFERENCE;
+
+    @Test
+    public void pairingMatchesAllPairsOnRandomSets() {
+        Random random = new Random(3407);
+        int pairs = 0;
+        for (int set = 0; set < 2000; set++) {
+            pairs += assertSamePairs("set " + set, randomRectangles(random, 1 + random.nextInt(40), 640));
+        }
+        assertTrue("random sets should contain pairs", pairs > 1000);
+    }
+
+    @Test
+    public void pairingMatchesAllPairsInDenseClutter() {
+        Random random = new Random(49);
+        for (int set = 0; set < 50; set++) {
+            assertSamePairs("set " + set, randomRectangles(random, 200 + random.nextInt(200), 640));
+        }
+    }
+
+    @Test
+    public void pairingMatchesAllPairsAtTheXLimits() {
+        Random random = new Random(7);
+        for (int set = 0; set < 500; set++) {
+            List<RotatedRect> rectangles = new ArrayList<>();
+            double x = 20 + random.nextInt(100);
+            double[] offsets = {0, MIN_X, MAX_X, MIN_X + MIN_X, Math.nextUp(MIN_X), Math.nextDown(MAX_X)};
+            for (double offset : offsets) {
+                rectangles.add(rectangle(x + offset, 100 + random.nextInt(3), 40, 15, 14.5 + random.nextInt(3)));
+            }
+            rectangles.addAll(randomRectangles(random, random.nextInt(10), 400));
+            shuffle(rectangles, random);
+            assertSamePairs("set " + set, rectangles);
+        }
+    }
+
+    @Test
+    public void rectanglesExactlyAtTheXLimitsAreNotPaired() {
+        RotatedRect left = rectangle(100, 100, 40, 15, 15);
+        assertEquals(0, HatchTargetRecognizer.findHatchTargets(
+                Arrays.asList(left, rectangle(100 + MIN_X, 100, 40, 15, 75))).size());
+        assertEquals(0, HatchTargetRecognizer.findHatchTargets(
+                Arrays.asList(left, rectangle(100 + MAX_X, 100, 40, 15, 75))).size());
+        assertEquals(1, HatchTargetRecognizer.findHatchTargets(
+                Arrays.asList(left, rectangle(100 + MAX_X - 0.5, 100, 40, 15, 75))).size());
+    }
+
+    @Test
+    public void onlyDuplicatesOfTheFirstTargetAreDropped() {
+        // 300 and 305 are close to each other but not to the first target, so both are kept
+        List<HatchTarget> targets = Arrays.asList(target(100), target(300), target(104), target(305));
+        List<HatchTarget> filtered = HatchTargetRecognizer.filterSameHatchTargets(targets);
+        assertEquals(3, filtered.size());
+        assertSame(targets.get(0), filtered.get(0));
+        assertSame(targets.get(1), filtered.get(1));
+        assertSame(targets.get(3), filtered.get(2));
+    }
+
+    @Test
+    public void distanceIsMeasuredFromTheFirstTarget() {
+        HatchTarget a = target(100);
+        HatchTarget b = target(106);
+        HatchTarget c = target(112);
+        List<HatchTarget> filtered = HatchTargetRecognizer.filterSameHatchTargets(Arrays.asList(b, a, c));
+        assertEquals(1, filtered.size());
+        assertSame(b, filtered.get(0));
+
+        filtered = HatchTargetRecognizer.filterSameHatchTargets(Arrays.asList(a, b, c));
+        assertEquals(2, filtered.size());
+        assertSame(a, filtered.get(0));
+        assertSame(c, filtered.get(1));
+    }
+
+    @Test
+    public void midpointsExactlyTheMaximumApartAreDifferentTargets() {
+        double span = HatchTargetRecognizer.SAME_TARGET_MAX_MIDPOINT_DIFFERENCE;
+        List<HatchTarget> targets = Arrays.asList(target(200), target(200 + span), target(200 + Math.nextDown(span)));
+        List<HatchTarget> filtered = HatchTargetRecognizer.filterSameHatchTargets(targets);
+        assertEquals(2, filtered.size());
+        assertSame(targets.get(0), filtered.get(0));
+        assertSame(targets.get(1), filtered.get(1));
+    }
+
+    @Test
+    public void filteringMatchesTheLoopOnRandomSets() {
+        Random random = new Random(11);
+        for (int set = 0; set < 2000; set++) {
+            int size = random.nextInt(30);
+            List<HatchTarget> targets = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                // Whole and half pixels so midpoints often land exactly on the limit
+                targets.add(target(300 + (random.nextInt(160) / 2.0)));
+            }
+            List<HatchTarget> expected = loopFilter(targets);
+            List<HatchTarget> actual = HatchTargetRecognizer.filterSameHatchTargets(targets);
+            assertEquals("set " + set, expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertSame("set " + set + " target " + i, expected.get(i), actual.get(i));
+            }
+        }
+    }
+
+    private static int assertSamePairs(String message, List<RotatedRect> rectangles) {
+        List<HatchTarget> expected = allPairs(rectangles);
+        List<HatchTarget> actual = HatchTargetRecognizer.findHatchTargets(rectangles);
+        assertEquals(message, expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame(message + " pair " + i, expected.get(i).getLeft(), actual.get(i).getLeft());
+            assertSame(message + " pair " + i, expected.get(i).getRight(), actual.get(i).getRight());
+        }
+        return actual.size();
+    }
+
+    /**
+     * The pairing before the sweep, comparing every pair of rectangles.
+     */
+    private static List<HatchTarget> allPairs(List<RotatedRect> targets) {
+        ArrayList<HatchTarget> hatchTargets = new ArrayList<>();
+
+        int innerEnd = targets.size();
+        int outerEnd = innerEnd - 1;
+        for (int i = 0; i < outerEnd; i++) {
+            for (int j = i + 1; j < innerEnd; j ++) {
+                boolean isHatchTarget = isHatchTarget(targets.get(i), targets.get(j));
+                if (isHatchTarget) {
+                    hatchTargets.add(new HatchTarget(targets.get(i), targets.get(j)));
+                }
+            }
+        }
+
+        return hatchTargets;
+    }
+
+    private static boolean isHatchTarget(RotatedRect rr1, RotatedRect rr2) {
+        double centerXDifference = Math.abs(rr1.center.x - rr2.center.x);
+        double centerYDifference = Math.abs(rr1.center.y - rr2.center.y);
+
+        boolean isYPlaneInRange = (centerYDifference < 10);
+        boolean isXPlaneInRange = (centerXDifference > 50) && (centerXDifference < 200);
+        boolean isSimilarSizes =
+                Math.abs(HatchTarget.getLongSide(rr1.size) - HatchTarget.getLongSide(rr2.size)) < 15;
+        boolean isValidAngles = isValidAngle(rr1) && isValidAngle(rr2);
+        return isYPlaneInRange && isXPlaneInRange && isSimilarSizes && isValidAngles;
+    }
+
+    private static boolean isValidAngle(RotatedRect rotatedRect) {
+        double absAngle = Math.abs(rotatedRect.angle);
+        return (absAngle > 10) && (absAngle < 80);
+    }
+
+    /**
+     * The duplicate filter before the single pass, repeated until a pass drops nothing.
+     */
+    private static List<HatchTarget> loopFilter(List<HatchTarget> targets) {
+        if (targets.size() < 2) {
+            return targets;
+        }
+
+        ArrayList<HatchTarget> currentTargets = new ArrayList<>(targets);
+        while (true) {
+            ArrayList<HatchTarget> newTargets = new ArrayList<>();
+            HatchTarget singleTarget = currentTargets.get(0);
+            newTargets.add(singleTarget);
+            for (int i = 1; i < currentTargets.size(); i++) {
+                if (!isSameHatchTarget(singleTarget, currentTargets.get(i))) {
+                    newTargets.add(currentTargets.get(i));
+                }
+            }
+            if (currentTargets.size() == newTargets.size()) {
+                break;
+            }
+            currentTargets = newTargets;
+        }
+
+        return currentTargets;
+    }
+
+    private static boolean isSameHatchTarget(HatchTarget ht1, HatchTarget ht2) {
+        double midpoint1 = ht1.getMidPoint();
+        double midpoint2 = ht2.getMidPoint();
+
+        return Math.abs(midpoint1 - midpoint2) < 10;
+    }
+
+    private static List<RotatedRect> randomRectangles(Random random, int count, int width) {
+        List<RotatedRect> rectangles = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            // Whole pixel centers so differences often land exactly on the limits
+            double x = random.nextInt(width);
+            double y = 100 + random.nextInt(20);
+            double longSide = 30 + random.nextInt(30);
+            double angle = (random.nextBoolean() ? -1 : 1) * random.nextInt(90);
+            rectangles.add(rectangle(x, y, longSide, 10 + random.nextInt(10), angle));
+        }
+        return rectangles;
+    }
+
+    private static RotatedRect rectangle(double x, double y, double longSide, double shortSide, double angle) {
+        return new RotatedRect(new Point(x, y), new Size(shortSide, longSide), angle);
+    }
+
+    private static HatchTarget target(double midPoint) {
+        return new HatchTarget(rectangle(midPoint - 50, 100, 40, 15, 15),
+                rectangle(midPoint + 50, 100, 40, 15, 75));
+    }
+
+    private static void shuffle(List<RotatedRect> rectangles, Random random) {
+        for (int i = rectangles.size() - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            RotatedRect swap = rectangles.get(i);
+            rectangles.set(i, rectangles.get(j));
+            rectangles.set(j, swap);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package frc.team3407.vision;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HatchTargetResultTest {
+
+    private static final double DELTA = 1e-9;
+
+    private static HatchTargetResult result(double offset, boolean hasTarget, double offsetVelocity,
+                                            long captureTime) {
+        return new HatchTargetResult(offset, hasTarget, offsetVelocity, 640, 0, 1, 1, 0, captureTime, 0, 0);
+    }
+
+    @Test
+    public void ageIsSecondsSinceCapture() {
+        HatchTargetResult result = result(10, true, 0, 1000000);
+        assertEquals(0.25, result.getAge(1250000), DELTA);
+        assertEquals(0, result.getAge(1000000), DELTA);
+    }
+
+    @Test
+    public void ageIsNeverNegative() {
+        assertEquals(0, result(10, true, 0, 1000000).getAge(900000), DELTA);
+    }
+
+    @Test
+    public void ageIsZeroBeforeTheFirstFrame() {
+        HatchTargetResult none = HatchTargetResult.none(640);
+        assertEquals(0, none.getAge(5000000), DELTA);
+        assertEquals(640, none.getWidth());
+    }
+
+    @Test
+    public void offsetIsProjectedByVelocityAndAge() {
+        HatchTargetResult result = result(10, true, 40, 1000000);
+        assertEquals(10, result.getProjectedOffset(1000000), DELTA);
+        assertEquals(14, result.getProjectedOffset(1100000), DELTA);
+    }
+
+    @Test
+    public void projectionStopsAtTheLimit() {
+        HatchTargetResult result = result(10, true, 40, 1000000);
+        double limit = 10 + (40 * HatchTargetSource.MAX_PROJECTION_SECONDS);
+        assertEquals(limit, result.getProjectedOffset(3000000), DELTA);
+    }
+
+    @Test
+    public void offsetWithoutTargetIsNotProjected() {
+        assertEquals(640, result(640, false, 40, 1000000).getProjectedOffset(1200000), DELTA);
+    }
+
+    @Test
+    public void sourceGettersReadTheResult() {
+        HatchTargetResult result = new HatchTargetResult(-12, true, 3, 320, 0, 5, 7, 0, 1000000, 0, 0);
+        HatchTargetSource source = () -> result;
+        assertEquals(-12, source.getOffset(), DELTA);
+        assertTrue(source.hasTarget());
+        assertEquals(3, source.getOffsetVelocity(), DELTA);
+        assertEquals(320, source.getWidth());
+        assertEquals(7, source.getCount());
+    }
+}